@@ -0,0 +1,396 @@
+/**
+ * AsyncLogWriter class writes log lines for one log file on a background thread.
+ * Callers hand over finished lines through a bounded queue; the writer thread groups them
+ * into batches and appends each batch to the file with a single write.
+ * When the queue is full the configured back-pressure policy decides whether the caller
+ * blocks, the line is dropped, or the line is spilled to a side file. Once spilling, later lines follow
+ * into the side file, and the writer thread copies it into the log as soon as the queue is empty,
+ * so the log stays in the order the lines were appended.
+ * Lines that cannot be written are counted as dropped.
+ * An optional BatchListener is told the file offset of every batch, e.g. to keep a LogIndex current,
+ * and an optional LogRotator is asked before every batch whether the file should be rotated first.
+ * rotateNow() archives the log on demand, also on the writer thread, so no batch is ever written
+ * to a file that is being moved.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+class AsyncLogWriter {
+
+    enum BackPressurePolicy {
+        // Wait until the writer thread has made room in the queue
+        BLOCK,
+        // Throw the line away and count it as dropped
+        DROP,
+        // Append the line to "<logFileName>.spill"; the writer thread copies it into the log in order
+        SPILL
+    }
+
+    /**
+     * Called on the writer thread after a batch has been appended.
+     * lineLengths[i] is the number of bytes lines.get(i) took in the file, including the line separator.
+     */
+    interface BatchListener {
+        void batchWritten(long startOffset, List<String> lines, int[] lineLengths);
+    }
+
+    static final int DEFAULT_CAPACITY = 8192;
+    static final int DEFAULT_BATCH_SIZE = 256;
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    private final String logFileName;
+    private final String spillFileName;
+    private final BlockingQueue<String> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final BackPressurePolicy policy;
+    private final Thread worker;
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong spilledLines = new AtomicLong();
+    private final AtomicLong queuedLines = new AtomicLong();
+    private final Object spillLock = new Object();
+    private final Object progressLock = new Object();
+    // A rotation asked for by rotateNow(), done by the writer thread before its next batch
+    private final AtomicReference<Rotation> rotation = new AtomicReference<>();
+    // Lines the writer thread has written or dropped; flush() waits for it to reach queuedLines
+    private long handledLines;
+    // Lines counted in queuedLines that are still in the spill file; guarded by spillLock
+    private long unmergedSpillLines;
+    private volatile boolean running = true;
+    // True while the spill file holds lines not yet in the log; guarded by spillLock for writers
+    private volatile boolean spilling;
+    private volatile BatchListener batchListener;
+    private volatile LogRotator rotator;
+
+    public AsyncLogWriter(String logFileName) {
+        this(logFileName, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, BackPressurePolicy.BLOCK);
+    }
+
+    public AsyncLogWriter(String logFileName, int capacity, int batchSize, long flushIntervalMillis, BackPressurePolicy policy) {
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Capacity, batch size and flush interval must be positive.");
+        }
+        this.logFileName = logFileName;
+        this.spillFileName = logFileName + ".spill";
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.policy = policy;
+        // Lines spilled by an earlier run come before anything appended now, and flush() waits for them too
+        this.spilling = new File(spillFileName).exists();
+        if (spilling) {
+            unmergedSpillLines = countLines(spillFileName);
+            queuedLines.addAndGet(unmergedSpillLines);
+        }
+        this.worker = new Thread(this::drainLoop, "log-writer-" + new File(logFileName).getName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public String getLogFileName() {
+        return logFileName;
+    }
+
+    public void setBatchListener(BatchListener batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    public void setRotator(LogRotator rotator) {
+        this.rotator = rotator;
+    }
+
+    /**
+     * Queues one complete log line (without line separator).
+     * Returns false if the line was dropped or the writer is already shut down.
+     */
+    public boolean append(String line) {
+        if (!running) {
+            return false;
+        }
+        if (policy == BackPressurePolicy.SPILL) {
+            return appendOrSpill(line);
+        }
+        if (queue.offer(line)) {
+            queuedLines.incrementAndGet();
+            return true;
+        }
+        switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(line);
+                    queuedLines.incrementAndGet();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedLines.incrementAndGet();
+                    return false;
+                }
+            case DROP:
+            default:
+                droppedLines.incrementAndGet();
+                return false;
+        }
+    }
+
+    private boolean appendOrSpill(String line) {
+        synchronized (spillLock) {
+            // While lines are spilled, later ones must follow them into the spill file to keep the log in order
+            if (!spilling && queue.offer(line)) {
+                queuedLines.incrementAndGet();
+                return true;
+            }
+            spilling = true;
+            return spill(line);
+        }
+    }
+
+    /**
+     * Blocks until every line queued or spilled before this call has been written to the file (or dropped
+     * because writing it failed).
+     */
+    public void flush() {
+        long target = queuedLines.get();
+        synchronized (progressLock) {
+            while (handledLines < target && worker.isAlive()) {
+                try {
+                    progressLock.wait(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Has the writer thread move the log into the archive with the given rotator, after every line queued
+     * before this call is written, and waits for it. Returns the archived file, or null if there was nothing
+     * to archive. Once the writer thread has stopped, the log is archived on the calling thread.
+     */
+    public synchronized File rotateNow(LogRotator rotator) {
+        flush();
+        Rotation request = new Rotation(rotator);
+        rotation.set(request);
+        while (true) {
+            if (!worker.isAlive() && rotation.compareAndSet(request, null)) {
+                return rotator.rotate();
+            }
+            try {
+                return request.done.get(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // The writer thread picks the request up within one flush interval; check it is still running
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Withdrawn unless the writer thread is already rotating
+                return rotation.compareAndSet(request, null) ? null : request.done.join();
+            } catch (ExecutionException e) {
+                System.err.println("Error rotating " + logFileName + ": " + e.getCause().getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting lines, writes everything still queued or spilled and waits for the writer thread to finish.
+     */
+    public void shutdown() {
+        running = false;
+        // No interrupt: the worker notices within one flush interval and drains the queue and the spill file
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    public long getSpilledLines() {
+        return spilledLines.get();
+    }
+
+    private void drainLoop() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || spilling) {
+            rotateIfRequested();
+            // Checked before waiting for lines, so lines spilled by an earlier run are merged at once
+            if (spilling && queue.isEmpty()) {
+                drainSpillFile();
+            }
+            try {
+                String first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - batch.size());
+                    handled(batch.size(), writeBatch(batch));
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // Treat an interrupt like shutdown(); the loop condition drains whatever is left
+                running = false;
+            }
+        }
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    private void rotateIfRequested() {
+        Rotation request = rotation.getAndSet(null);
+        if (request != null) {
+            try {
+                request.done.complete(request.rotator.rotate());
+            } catch (RuntimeException e) {
+                request.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Appends the batch to the log. Returns false if it could not be written.
+     */
+    private boolean writeBatch(List<String> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 64);
+        int[] lineLengths = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] line = (batch.get(i) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            bytes.write(line, 0, line.length);
+            lineLengths[i] = line.length;
+        }
+        // Rotation happens here, on the only thread that writes this file
+        LogRotator currentRotator = rotator;
+        if (currentRotator != null) {
+            currentRotator.rotateIfNeeded();
+        }
+
+        // One open and one write per batch instead of per line
+        File logFile = new File(logFileName);
+        long startOffset = logFile.length();
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            bytes.writeTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error writing log batch to " + logFileName + ": " + e.getMessage());
+            return false;
+        }
+        BatchListener listener = batchListener;
+        if (listener != null) {
+            try {
+                listener.batchWritten(startOffset, batch, lineLengths);
+            } catch (RuntimeException e) {
+                System.err.println("Error in log batch listener for " + logFileName + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void handled(long lines, boolean written) {
+        if (!written) {
+            droppedLines.addAndGet(lines);
+        }
+        synchronized (progressLock) {
+            handledLines += lines;
+            progressLock.notifyAll();
+        }
+    }
+
+    private boolean spill(String line) {
+        try (Writer writer = new FileWriter(spillFileName, StandardCharsets.UTF_8, true)) {
+            writer.write(line + System.lineSeparator());
+            spilledLines.incrementAndGet();
+            unmergedSpillLines++;
+            queuedLines.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            droppedLines.incrementAndGet();
+            System.err.println("Error spilling log line to " + spillFileName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static long countLines(String fileName) {
+        try (Stream<String> lines = Files.lines(new File(fileName).toPath(), StandardCharsets.UTF_8)) {
+            return lines.count();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error reading spilled log lines from " + fileName + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Copies the spill file into the log, behind whatever is still queued, in batches like any other lines.
+     * Appenders wait meanwhile, so no newer line can reach the queue or the spill file until it is done.
+     */
+    private void drainSpillFile() {
+        synchronized (spillLock) {
+            List<String> batch = new ArrayList<>(batchSize);
+            // Lines queued before spilling started are older than every spilled line
+            while (queue.drainTo(batch, batchSize) > 0) {
+                handled(batch.size(), writeBatch(batch));
+                batch.clear();
+            }
+            Path spillPath = new File(spillFileName).toPath();
+            long merged = 0;
+            try {
+                if (Files.exists(spillPath)) {
+                    for (String line : Files.readAllLines(spillPath, StandardCharsets.UTF_8)) {
+                        batch.add(line);
+                        if (batch.size() == batchSize) {
+                            handled(batch.size(), writeBatch(batch));
+                            merged += batch.size();
+                            batch.clear();
+                        }
+                    }
+                    handled(batch.size(), writeBatch(batch));
+                    merged += batch.size();
+                    Files.delete(spillPath);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.err.println("Error merging spilled log lines from " + spillFileName + ": " + e.getMessage());
+            }
+            // Spilled lines that could not be read are lost; count them so flush() does not wait for them
+            if (merged < unmergedSpillLines) {
+                handled(unmergedSpillLines - merged, false);
+            }
+            unmergedSpillLines = 0;
+            spilling = false;
+        }
+    }
+
+    private static final class Rotation {
+        final LogRotator rotator;
+        final CompletableFuture<File> done = new CompletableFuture<>();
+
+        Rotation(LogRotator rotator) {
+            this.rotator = rotator;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * AvailabilitySnapshot class is an immutable view of the free timeslots of one charging station at one booking version.
+ * Slot labels, the console listing and the JSON slot array are rendered once when the snapshot is built,
+ * so readers only read fields: no locks, no String.format and no copying per request.
+ * A station publishes a new snapshot after every booking change; readers keep using the one they hold.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class AvailabilitySnapshot {
+    private final long version;
+    private final int[] freeTimes;
+    private final String[] labels;
+    private final List<Integer> times;
+    private final String listing;
+    private final String slotsJson;
+
+    private AvailabilitySnapshot(long version, int[] freeTimes, String[] labels) {
+        this.version = version;
+        this.freeTimes = freeTimes;
+        this.labels = labels;
+
+        List<Integer> times = new ArrayList<>(freeTimes.length);
+        StringBuilder listing = new StringBuilder("Available timeslots:\n");
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < freeTimes.length; i++) {
+            times.add(freeTimes[i]);
+            listing.append(i + 1).append(". ").append(labels[i]).append('\n');
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(freeTimes[i]);
+        }
+        this.times = Collections.unmodifiableList(times);
+        this.listing = listing.toString();
+        this.slotsJson = json.append(']').toString();
+    }
+
+    /**
+     * Builds the snapshot of day 0 of one station's calendar row. slotLabels holds the time range
+     * of every slot of the day, rendered once by the station.
+     */
+    static AvailabilitySnapshot of(long version, TimeslotCalendar calendar, int calendarRow, String[] slotLabels) {
+        int[] free = calendar.nextFreeSlots(calendarRow, 0, 0, calendar.getSlotsPerDay());
+        int[] freeTimes = new int[free.length];
+        String[] labels = new String[free.length];
+        for (int i = 0; i < free.length; i++) {
+            freeTimes[i] = calendar.timeOf(free[i]);
+            labels[i] = slotLabels[free[i]];
+        }
+        return new AvailabilitySnapshot(version, freeTimes, labels);
+    }
+
+    /**
+     * Returns the booking version this snapshot was built at; a later snapshot has a higher version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return freeTimes.length;
+    }
+
+    public boolean isEmpty() {
+        return freeTimes.length == 0;
+    }
+
+    /**
+     * Returns the start time (e.g. 930) of the i-th free slot.
+     */
+    public int timeAt(int i) {
+        return freeTimes[i];
+    }
+
+    /**
+     * Returns the time range label (e.g. "09:30 AM - 10:00 AM") of the i-th free slot.
+     */
+    public String labelAt(int i) {
+        return labels[i];
+    }
+
+    /**
+     * Returns the start times of the free slots as an unmodifiable list.
+     */
+    public List<Integer> times() {
+        return times;
+    }
+
+    /**
+     * Returns the numbered console listing, starting with "Available timeslots:".
+     */
+    public String listing() {
+        return listing;
+    }
+
+    /**
+     * Returns the start times of the free slots as a JSON array, e.g. [930,1000].
+     */
+    public String slotsJson() {
+        return slotsJson;
+    }
+}
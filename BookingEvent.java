@@ -0,0 +1,53 @@
+/**
+ * BookingEvent class records that a user booked, canceled or moved a timeslot at a station.
+ * For a move, slot is the new timeslot and previousSlot the one that was given up; otherwise previousSlot is -1.
+ *
+ */
+
+class BookingEvent extends LogEvent {
+
+    enum Action {
+        BOOKED,
+        CANCELED,
+        REBOOKED
+    }
+
+    final String stationId;
+    final String username;
+    final boolean isAdmin;
+    final int slot;
+    final int previousSlot;
+    final Action action;
+
+    public BookingEvent(long timestampMillis, String stationId, String username, boolean isAdmin, int slot, int previousSlot, Action action) {
+        super(timestampMillis);
+        this.stationId = stationId;
+        this.username = username;
+        this.isAdmin = isAdmin;
+        this.slot = slot;
+        this.previousSlot = previousSlot;
+        this.action = action;
+    }
+
+    public static BookingEvent booked(String stationId, User user, int slot) {
+        return new BookingEvent(System.currentTimeMillis(), stationId, user.username, user.isAdmin, slot, -1, Action.BOOKED);
+    }
+
+    public static BookingEvent canceled(String stationId, User user, int slot) {
+        return new BookingEvent(System.currentTimeMillis(), stationId, user.username, user.isAdmin, slot, -1, Action.CANCELED);
+    }
+
+    public static BookingEvent rebooked(String stationId, User user, int fromSlot, int toSlot) {
+        return new BookingEvent(System.currentTimeMillis(), stationId, user.username, user.isAdmin, toSlot, fromSlot, Action.REBOOKED);
+    }
+
+    @Override
+    byte type() {
+        return BOOKING;
+    }
+
+    @Override
+    public String toString() {
+        return username + " " + action.name().toLowerCase() + " timeslot " + slot + " at " + stationId;
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * BookingJournal class persists the bookings of a charging station as a binary, append-only journal.
+ * Every booking, cancellation and rebooking is one small length-prefixed, CRC-checked record appended
+ * to "<base>.journal". A checkpoint writes all current bookings and the charging queue to "<base>.snapshot"
+ * and empties the journal, so startup only replays the snapshot plus the records written since.
+ * A torn record at the end of the journal (e.g. after a crash) is detected by its CRC and cut off on replay.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+class BookingJournal {
+
+    enum FsyncPolicy {
+        // Force every record to disk before the booking call returns
+        ALWAYS,
+        // Force after every syncEvery records and on checkpoint/close
+        BATCHED,
+        // Leave flushing to the operating system
+        NEVER
+    }
+
+    /**
+     * Receives the bookings found while replaying the snapshot and the journal.
+     */
+    interface Replay {
+        void booked(int slot, String username, boolean isAdmin);
+
+        void canceled(int slot, String username);
+
+        // A user in the snapshot's charging queue, in service order
+        void queued(String username, boolean isAdmin);
+
+        // Called between the snapshot and the journal records; hasQueue is false without a snapshot
+        // or for a snapshot written before the queue was saved
+        void snapshotRead(boolean hasQueue);
+    }
+
+    static final int SNAPSHOT_MAGIC = 0x43535332; // "CSS2"
+    // Snapshots written before the charging queue was saved
+    static final int SNAPSHOT_MAGIC_V1 = 0x43535331; // "CSS1"
+    static final int DEFAULT_SYNC_EVERY = 32;
+    static final int DEFAULT_COMPACT_AFTER = 1024;
+
+    private static final byte BOOKED = 1;
+    private static final byte CANCELED = 2;
+    private static final byte REBOOKED = 3;
+    // Upper bound for a single record, used to reject garbage lengths
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private final File journalFile;
+    private final File snapshotFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final int syncEvery;
+    private final int compactAfter;
+    private FileOutputStream out;
+    private int unsyncedRecords;
+    private int recordsSinceSnapshot;
+
+    public BookingJournal(String baseName, FsyncPolicy fsyncPolicy) {
+        this(baseName, fsyncPolicy, DEFAULT_SYNC_EVERY, DEFAULT_COMPACT_AFTER);
+    }
+
+    public BookingJournal(String baseName, FsyncPolicy fsyncPolicy, int syncEvery, int compactAfter) {
+        this.journalFile = new File(baseName + ".journal");
+        this.snapshotFile = new File(baseName + ".snapshot");
+        this.fsyncPolicy = fsyncPolicy;
+        this.syncEvery = Math.max(1, syncEvery);
+        this.compactAfter = Math.max(1, compactAfter);
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Returns true if a snapshot or journal has been written before.
+     */
+    public boolean exists() {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    /**
+     * Returns when the snapshot or the journal was last written, 0 if neither exists.
+     */
+    public long lastModified() {
+        return Math.max(snapshotFile.lastModified(), journalFile.lastModified());
+    }
+
+    public synchronized int getRecordsSinceSnapshot() {
+        return recordsSinceSnapshot;
+    }
+
+    public boolean shouldCompact() {
+        return getRecordsSinceSnapshot() >= compactAfter;
+    }
+
+    public void appendBooked(int slot, User user) throws IOException {
+        append(BOOKED, slot, slot, user);
+    }
+
+    public void appendCanceled(int slot, User user) throws IOException {
+        append(CANCELED, slot, slot, user);
+    }
+
+    public void appendRebooked(int fromSlot, int toSlot, User user) throws IOException {
+        append(REBOOKED, fromSlot, toSlot, user);
+    }
+
+    /**
+     * Replays the snapshot and then the journal. Records are applied in the order they were written;
+     * a damaged tail of the journal is truncated so later appends start from a clean record boundary.
+     */
+    public synchronized void replay(Replay replay) throws IOException {
+        replay.snapshotRead(snapshotFile.exists() && readSnapshot(replay));
+        recordsSinceSnapshot = 0;
+        if (!journalFile.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int crc;
+                try {
+                    in.readFully(payload);
+                    crc = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc != crcOf(payload, payload.length)) {
+                    break;
+                }
+                applyRecord(payload, replay);
+                validLength += 4 + length + 4;
+                recordsSinceSnapshot++;
+            }
+        }
+        if (validLength < journalFile.length()) {
+            System.err.println("Discarding damaged journal tail of " + (journalFile.length() - validLength) + " bytes in " + journalFile);
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(validLength);
+            }
+        }
+    }
+
+    /**
+     * Writes all bookings currently in the slot table and the charging queue, in service order, to a new
+     * snapshot and empties the journal. The snapshot is written to a temporary file and renamed, so a crash
+     * leaves either the old or the new snapshot in place.
+     */
+    public synchronized void checkpoint(String stationId, SlotTable slotTable, List<User> waiting) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeUTF(stationId);
+        // Take one pass over the table; the owners are read once so count and entries agree
+        int[] slots = new int[slotTable.size()];
+        User[] owners = new User[slotTable.size()];
+        int count = 0;
+        for (int i = 0; i < slotTable.size(); i++) {
+            User owner = slotTable.ownerAt(i);
+            if (owner != null) {
+                slots[count] = slotTable.timeAt(i);
+                owners[count++] = owner;
+            }
+        }
+        data.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            data.writeInt(slots[i]);
+            data.writeUTF(owners[i].username);
+            data.writeBoolean(owners[i].isAdmin);
+        }
+        data.writeInt(waiting.size());
+        for (User user : waiting) {
+            data.writeUTF(user.username);
+            data.writeBoolean(user.isAdmin);
+        }
+        data.flush();
+        byte[] content = bytes.toByteArray();
+
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream snapshot = new FileOutputStream(temp)) {
+            snapshot.write(content);
+            snapshot.write(intBytes(crcOf(content, content.length)));
+            snapshot.getFD().sync();
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Every record so far is covered by the snapshot
+        closeStream();
+        new FileOutputStream(journalFile).close();
+        recordsSinceSnapshot = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null && fsyncPolicy != FsyncPolicy.NEVER && unsyncedRecords > 0) {
+            out.getFD().sync();
+        }
+        closeStream();
+    }
+
+    private synchronized void append(byte type, int fromSlot, int toSlot, User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0); // length, patched below
+        data.writeByte(type);
+        data.writeInt(fromSlot);
+        if (type == REBOOKED) {
+            data.writeInt(toSlot);
+        }
+        data.writeUTF(user.username);
+        data.writeBoolean(user.isAdmin);
+        data.writeInt(0); // crc, patched below
+        byte[] record = bytes.toByteArray();
+
+        int length = record.length - 8;
+        System.arraycopy(intBytes(length), 0, record, 0, 4);
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, length);
+        System.arraycopy(intBytes((int) crc.getValue()), 0, record, record.length - 4, 4);
+
+        if (out == null) {
+            File parent = journalFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            out = new FileOutputStream(journalFile, true);
+        }
+        // One write per record, so a record is never interleaved with another
+        out.write(record);
+        recordsSinceSnapshot++;
+        unsyncedRecords++;
+        if (fsyncPolicy == FsyncPolicy.ALWAYS || (fsyncPolicy == FsyncPolicy.BATCHED && unsyncedRecords >= syncEvery)) {
+            out.getFD().sync();
+            unsyncedRecords = 0;
+        }
+    }
+
+    private void applyRecord(byte[] payload, Replay replay) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = data.readByte();
+        int fromSlot = data.readInt();
+        int toSlot = type == REBOOKED ? data.readInt() : fromSlot;
+        String username = data.readUTF();
+        boolean isAdmin = data.readBoolean();
+        switch (type) {
+            case BOOKED:
+                replay.booked(fromSlot, username, isAdmin);
+                break;
+            case CANCELED:
+                replay.canceled(fromSlot, username);
+                break;
+            case REBOOKED:
+                replay.booked(toSlot, username, isAdmin);
+                replay.canceled(fromSlot, username);
+                break;
+            default:
+                System.err.println("Skipping unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Replays the bookings and queue of the snapshot. Returns false if the snapshot predates the saved queue.
+     */
+    private boolean readSnapshot(Replay replay) throws IOException {
+        byte[] content = Files.readAllBytes(snapshotFile.toPath());
+        if (content.length < 8 || crcOf(content, content.length - 4) != readInt(content, content.length - 4)) {
+            throw new IOException("Snapshot " + snapshotFile + " is damaged.");
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 4));
+        int magic = data.readInt();
+        if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V1) {
+            throw new IOException(snapshotFile + " is not a booking snapshot.");
+        }
+        data.readUTF(); // stationId
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            int slot = data.readInt();
+            String username = data.readUTF();
+            boolean isAdmin = data.readBoolean();
+            replay.booked(slot, username, isAdmin);
+        }
+        if (magic == SNAPSHOT_MAGIC_V1) {
+            return false;
+        }
+        int queued = data.readInt();
+        for (int i = 0; i < queued; i++) {
+            String username = data.readUTF();
+            boolean isAdmin = data.readBoolean();
+            replay.queued(username, isAdmin);
+        }
+        return true;
+    }
+
+    private void closeStream() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        unsyncedRecords = 0;
+    }
+
+    private static int crcOf(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * BookingServer class exposes the stations of a StationCluster over a small HTTP API, so bookings
+ * can be made programmatically and concurrently instead of through System.in.
+ * Endpoints (GET or POST, parameters in the query string), all answering with one JSON object:
+ *   /slots?station=Station1                                   free timeslots
+ *   /book?station=Station1&user=Alice&admin=false&slot=930    book a timeslot
+ *   /cancel?station=Station1&user=Alice&slot=930              cancel a booking (leaving the queue with the last one)
+ *   /energy?station=Station1&slot=930&source=1                allocate energy for a booked timeslot
+ *   /queue?station=Station1                                   queue length and head
+ * Each request runs on its own virtual thread when the JDK has them (Java 21+). Otherwise requests run on a
+ * bounded pool of MAX_REQUEST_THREADS threads with up to MAX_QUEUED_REQUESTS waiting; requests beyond
+ * that are answered at once with 503 and a Retry-After header instead of starting more threads.
+ * Booking calls only lock the slots they change, so requests for one station do not queue behind each other.
+ *
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BookingServer {
+    // Limits of the request pool used without virtual threads
+    static final int MAX_REQUEST_THREADS = 200;
+    static final int MAX_QUEUED_REQUESTS = 1000;
+
+    private static final LongAdder rejectedRequests = Metrics.counter("server.rejectedRequests");
+    // Set while a request the pool had no room for runs on the server's dispatcher thread, to be answered with 503
+    private static final ThreadLocal<Boolean> overloaded = ThreadLocal.withInitial(() -> false);
+
+    private final StationCluster cluster;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int stations = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        StationCluster cluster = new StationCluster(shards, "src/stations", BookingJournal.FsyncPolicy.BATCHED);
+        List<String> stationIds = new ArrayList<>();
+        for (int i = 1; i <= stations; i++) {
+            stationIds.add("Station" + i);
+        }
+        // Bookings and queues are read from the startup images when first used, so the server is up sooner
+        cluster.warmUp(stationIds, false);
+        Metrics.registerMBean();
+        Metrics.startPeriodicDump("metrics.txt", 10_000);
+        BookingServer server = new BookingServer(cluster, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            cluster.shutdown();
+            LogManager.shutdown();
+            Metrics.writeDump("metrics.txt");
+        }, "booking-server-shutdown"));
+        server.start();
+        System.out.println("Booking server listening on port " + port + " with " + stations + " stations.");
+    }
+
+    public BookingServer(StationCluster cluster, int port) throws IOException {
+        this.cluster = cluster;
+        // A deep accept backlog so bursts of new connections are not refused
+        this.server = HttpServer.create(new InetSocketAddress(port), 4096);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/slots", exchange -> handle(exchange, this::slots));
+        server.createContext("/book", exchange -> handle(exchange, this::book));
+        server.createContext("/cancel", exchange -> handle(exchange, this::cancel));
+        server.createContext("/energy", exchange -> handle(exchange, this::energy));
+        server.createContext("/queue", exchange -> handle(exchange, this::queue));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds + 1L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task when the running JDK supports it,
+     * and a bounded thread pool otherwise. Looked up reflectively so the code still compiles for Java 17.
+     * A request the bounded pool has no room for runs on the caller (the server's dispatcher thread) and
+     * is only answered with 503, so the dispatcher is never held up by a real request.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_REQUEST_THREADS, MAX_REQUEST_THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS), runnable -> {
+                        Thread thread = new Thread(runnable, "booking-server-request-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (request, rejectedBy) -> {
+                        rejectedRequests.increment();
+                        overloaded.set(true);
+                        try {
+                            request.run();
+                        } finally {
+                            overloaded.set(false);
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    interface Endpoint {
+        Response call(ChargingStation station, Map<String, String> params);
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        Response response;
+        if (overloaded.get()) {
+            response = Response.error(503, "Too many requests in progress, try again later.");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        } else {
+            response = call(exchange, endpoint);
+        }
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Response call(HttpExchange exchange, Endpoint endpoint) {
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String stationId = params.getOrDefault("station", "Station1");
+            ChargingStation station = cluster.get(stationId);
+            return station == null
+                    ? Response.error(404, "Unknown station " + stationId)
+                    : endpoint.call(station, params);
+        } catch (IllegalArgumentException e) {
+            return Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            return Response.error(500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private Response slots(ChargingStation station, Map<String, String> params) {
+        StringBuilder json = new StringBuilder("{\"station\":");
+        EventCodec.appendJsonString(json, station.stationId);
+        AvailabilitySnapshot availability = station.getAvailability();
+        json.append(",\"version\":").append(availability.getVersion());
+        json.append(",\"slots\":").append(availability.slotsJson());
+        return Response.ok(json.append('}').toString());
+    }
+
+    private Response book(ChargingStation station, Map<String, String> params) {
+        // The admin flag applies to this booking and queue entry only; it never promotes the user elsewhere
+        User user = new User(required(params, "user"), Boolean.parseBoolean(params.get("admin")));
+        int slot = intParam(params, "slot");
+        if (!station.tryBook(user, slot)) {
+            return Response.error(409, "Timeslot " + slot + " is not available.");
+        }
+        station.getQueue().offer(user);
+        return bookingResponse(station, "booked", user, slot);
+    }
+
+    private Response cancel(ChargingStation station, Map<String, String> params) {
+        User user = new User(required(params, "user"), false);
+        int slot = intParam(params, "slot");
+        if (!station.cancel(user, slot)) {
+            return Response.error(409, user.username + " does not hold timeslot " + slot + ".");
+        }
+        ChargingQueue queue = station.getQueue();
+        // Checked and removed under the queue's lock, so a booking made meanwhile is either seen or queued again after
+        synchronized (queue) {
+            if (!station.hasBooking(user)) {
+                queue.remove(user);
+            }
+        }
+        return bookingResponse(station, "canceled", user, slot);
+    }
+
+    private Response energy(ChargingStation station, Map<String, String> params) {
+        int slot = intParam(params, "slot");
+        int choice = params.containsKey("source") ? intParam(params, "source") : 0;
+        int index = station.calendar.slotOf(slot);
+        if (index < 0 || station.calendar.isFree(station.calendarRow, 0, index)) {
+            return Response.error(409, "Timeslot " + slot + " is not booked.");
+        }
+        String source = station.allocateEnergy(slot, choice);
+        if (source == null) {
+            return Response.error(409, "No energy source has capacity left for timeslot " + slot + ".");
+        }
+        StringBuilder json = new StringBuilder("{\"station\":");
+        EventCodec.appendJsonString(json, station.stationId);
+        json.append(",\"slot\":").append(slot).append(",\"source\":");
+        EventCodec.appendJsonString(json, source);
+        return Response.ok(json.append('}').toString());
+    }
+
+    private Response queue(ChargingStation station, Map<String, String> params) {
+        User head = station.getQueue().peek();
+        StringBuilder json = new StringBuilder("{\"station\":");
+        EventCodec.appendJsonString(json, station.stationId);
+        json.append(",\"size\":").append(station.getQueue().size()).append(",\"head\":");
+        if (head == null) {
+            json.append("null");
+        } else {
+            EventCodec.appendJsonString(json, head.username);
+        }
+        return Response.ok(json.append('}').toString());
+    }
+
+    private static Response bookingResponse(ChargingStation station, String action, User user, int slot) {
+        StringBuilder json = new StringBuilder("{\"station\":");
+        EventCodec.appendJsonString(json, station.stationId);
+        json.append(",\"user\":");
+        EventCodec.appendJsonString(json, user.username);
+        json.append(",\"slot\":").append(slot).append(",\"action\":\"").append(action).append("\"}");
+        return Response.ok(json.toString());
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name) {
+        String value = required(params, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            StringBuilder json = new StringBuilder("{\"error\":");
+            EventCodec.appendJsonString(json, message);
+            return new Response(status, json.append('}').toString());
+        }
+    }
+}
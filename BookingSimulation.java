@@ -0,0 +1,103 @@
+/**
+ * BookingSimulation class races many users for the same timeslots of one charging station
+ * from many threads and checks that no slot ends up double-booked.
+ * Each user tries the morning slots in order, and some of them cancel or rebook afterwards.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class BookingSimulation {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int usersPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        boolean consistent = new BookingSimulation().simulateConcurrentBooking(threads, usersPerThread);
+        if (!consistent) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the race and returns true if every slot has at most one owner and the final slot table
+     * matches the bookings that were reported as successful.
+     */
+    public boolean simulateConcurrentBooking(int threads, int usersPerThread) {
+        ChargingStation station = new ChargingStation("SimulationStation");
+        int[] morningSlots = {900, 930, 1000, 1030, 1100, 1130};
+
+        // holders[i] counts how many users currently believe they own slot i
+        AtomicIntegerArray holders = new AtomicIntegerArray(station.slotTable.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int threadId = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int u = 0; u < usersPerThread; u++) {
+                    User user = new User("User" + threadId + "-" + u, u % 50 == 0);
+                    for (int slot : morningSlots) {
+                        if (station.tryBook(user, slot)) {
+                            holders.incrementAndGet(station.slotTable.indexOf(slot));
+                            releaseOrMove(station, holders, user, slot, u);
+                            break;
+                        }
+                    }
+                }
+            }, "booking-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+        boolean consistent = true;
+        for (int i = 0; i < station.slotTable.size(); i++) {
+            int expected = station.slotTable.isFree(i) ? 0 : 1;
+            if (holders.get(i) != expected) {
+                System.out.println("Slot " + station.slotTable.timeAt(i) + " has " + holders.get(i) + " holders but the table says " + expected);
+                consistent = false;
+            }
+        }
+        System.out.println(threads * usersPerThread + " users raced for " + morningSlots.length + " slots in " + elapsedMillis + " ms. "
+                + (consistent ? "No double bookings." : "Slot table is inconsistent."));
+        return consistent;
+    }
+
+    private void releaseOrMove(ChargingStation station, AtomicIntegerArray holders, User user, int slot, int round) {
+        // Every third user cancels, every fifth tries to move to the afternoon
+        if (round % 3 == 0) {
+            holders.decrementAndGet(station.slotTable.indexOf(slot));
+            if (!station.cancel(user, slot)) {
+                holders.incrementAndGet(station.slotTable.indexOf(slot));
+            }
+        } else if (round % 5 == 0) {
+            int afternoon = 1400;
+            holders.incrementAndGet(station.slotTable.indexOf(afternoon));
+            holders.decrementAndGet(station.slotTable.indexOf(slot));
+            if (!station.rebook(user, slot, afternoon)) {
+                holders.decrementAndGet(station.slotTable.indexOf(afternoon));
+                holders.incrementAndGet(station.slotTable.indexOf(slot));
+            }
+        }
+    }
+}
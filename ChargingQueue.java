@@ -0,0 +1,253 @@
+/**
+ * ChargingQueue class is the charging queue of a station, kept as an indexed binary heap keyed by username.
+ * Every user is in the queue at most once. Users are served by rank, where the rank is the arrival ticket,
+ * minus an aging window for admins: an admin overtakes users who arrived recently, but a user who has
+ * waited longer than the aging window is served before any admin arriving after them, so nobody starves.
+ * prioritize() moves a user to the front in O(log n). All methods are synchronized for use by the dispatcher.
+ * offer, prioritize, poll and remove record their time in the queue.* latency histograms of Metrics.
+ * Entries are UserRegistry ids with their ranks and admin flags, and positions are an int[] indexed by id,
+ * so a queued user costs 17 bytes and no objects.
+ * Every change bumps a version number, so persistence can tell whether the queue changed since it was saved.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ChargingQueue {
+    static final long DEFAULT_AGING_WINDOW = 16;
+
+    private static final LatencyHistogram offerLatency = Metrics.histogram("queue.offer");
+    private static final LatencyHistogram prioritizeLatency = Metrics.histogram("queue.prioritize");
+    private static final LatencyHistogram pollLatency = Metrics.histogram("queue.poll");
+    private static final LatencyHistogram removeLatency = Metrics.histogram("queue.remove");
+
+    private final long agingWindow;
+    private final UserRegistry registry = UserRegistry.get();
+    // Heap position + 1 of each user id, 0 if the user is not queued
+    private int[] positions = new int[16];
+    private int[] ids = new int[16];
+    private long[] ranks = new long[16];
+    // Whether each entry was queued as an admin; admin rights belong to the entry, not the user
+    private boolean[] admins = new boolean[16];
+    private int size;
+    private long nextTicket;
+    private long version;
+
+    public ChargingQueue() {
+        this(DEFAULT_AGING_WINDOW);
+    }
+
+    public ChargingQueue(long agingWindow) {
+        if (agingWindow < 0) {
+            throw new IllegalArgumentException("Aging window must not be negative.");
+        }
+        this.agingWindow = agingWindow;
+    }
+
+    /**
+     * Adds the user to the back of the queue (or ahead of recent arrivals for admins).
+     * Returns false if a user with the same username is already queued.
+     */
+    public synchronized boolean offer(User user) {
+        long start = System.nanoTime();
+        int id = registry.intern(user);
+        if (positionOf(id) >= 0) {
+            offerLatency.recordSince(start);
+            return false;
+        }
+        long ticket = nextTicket++;
+        long rank = user.isAdmin ? ticket - agingWindow : ticket;
+        append(id, user.isAdmin, rank);
+        siftUp(size - 1);
+        version++;
+        offerLatency.recordSince(start);
+        return true;
+    }
+
+    /**
+     * Moves the queued user with this username to the front. Returns false if they are not queued.
+     */
+    public synchronized boolean prioritize(User user) {
+        long start = System.nanoTime();
+        int position = positionOf(registry.idOf(user.username));
+        if (position < 0) {
+            prioritizeLatency.recordSince(start);
+            return false;
+        }
+        // One below the current front is enough to become the new front
+        if (position != 0) {
+            ranks[position] = ranks[0] - 1;
+            siftUp(position);
+            version++;
+        }
+        prioritizeLatency.recordSince(start);
+        return true;
+    }
+
+    public synchronized User peek() {
+        return size == 0 ? null : registry.user(ids[0], admins[0]);
+    }
+
+    public synchronized User poll() {
+        if (size == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        User head = registry.user(ids[0], admins[0]);
+        removeAt(0);
+        version++;
+        pollLatency.recordSince(start);
+        return head;
+    }
+
+    public synchronized boolean remove(User user) {
+        long start = System.nanoTime();
+        int position = positionOf(registry.idOf(user.username));
+        if (position < 0) {
+            removeLatency.recordSince(start);
+            return false;
+        }
+        removeAt(position);
+        version++;
+        removeLatency.recordSince(start);
+        return true;
+    }
+
+    public synchronized boolean contains(User user) {
+        return positionOf(registry.idOf(user.username)) >= 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = 0;
+        }
+        size = 0;
+        version++;
+    }
+
+    /**
+     * Returns a number that changes whenever the queue changes.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the queued users in the order they would be served.
+     */
+    public synchronized List<User> inServiceOrder() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(ranks[a], ranks[b]));
+        List<User> users = new ArrayList<>(size);
+        for (int position : order) {
+            users.add(registry.user(ids[position], admins[position]));
+        }
+        return users;
+    }
+
+    /**
+     * Replaces the queue with the users in the given service order, e.g. as saved by inServiceOrder().
+     * Admins are not moved ahead again: the saved order already includes their priority.
+     */
+    public synchronized void restore(List<User> users) {
+        clear();
+        for (User user : users) {
+            int id = registry.intern(user);
+            if (positionOf(id) >= 0) {
+                continue;
+            }
+            // Appending in ascending rank order keeps the heap valid without sifting
+            append(id, user.isAdmin, nextTicket++);
+        }
+    }
+
+    private void append(int id, boolean admin, long rank) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            ranks = Arrays.copyOf(ranks, size * 2);
+            admins = Arrays.copyOf(admins, size * 2);
+        }
+        if (id >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(positions.length * 2, id + 1));
+        }
+        ids[size] = id;
+        ranks[size] = rank;
+        admins[size] = admin;
+        positions[id] = ++size;
+    }
+
+    private int positionOf(int id) {
+        return id >= 0 && id < positions.length ? positions[id] - 1 : -1;
+    }
+
+    private void removeAt(int position) {
+        positions[ids[position]] = 0;
+        int last = --size;
+        if (position != last) {
+            move(last, position);
+            siftDown(position);
+            siftUp(position);
+        }
+    }
+
+    private void siftUp(int position) {
+        int id = ids[position];
+        long rank = ranks[position];
+        boolean admin = admins[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (ranks[parent] <= rank) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        place(id, admin, rank, position);
+    }
+
+    private void siftDown(int position) {
+        int id = ids[position];
+        long rank = ranks[position];
+        boolean admin = admins[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && ranks[child + 1] < ranks[child]) {
+                child++;
+            }
+            if (rank <= ranks[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        place(id, admin, rank, position);
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        ranks[to] = ranks[from];
+        admins[to] = admins[from];
+        positions[ids[to]] = to + 1;
+    }
+
+    private void place(int id, boolean admin, long rank, int position) {
+        ids[position] = id;
+        ranks[position] = rank;
+        admins[position] = admin;
+        positions[id] = position + 1;
+    }
+}
@@ -2,198 +2,1055 @@
  * ChargingStation class represents a charging station for vehicles, 
  * managing timeslot bookings, queue prioritization, and state persistence. 
  * It includes methods for booking timeslots, displaying information, and handling energy sources.
+ * Bookings are thread-safe and can be persisted to a text state file, a journal, and a startup image.
  * 
  */
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 class ChargingStation {
     String stationId;
-    Queue<User> queue;
-    List<Integer> availableTimeslots;
-    List<Integer> bookedSlots;
-    List<User> bookedUsers;
+    ChargingQueue queue;
+    // Owner of every slot, changed under the slot's lock and read without one; no slot is ever booked twice
+    SlotTable slotTable;
+    // Free slots as bitsets, kept in step with the slot table; availability is answered from here
+    TimeslotCalendar calendar;
+    // This station's row in the calendar, which a StationCluster shares between all its stations
+    final int calendarRow;
     static String stationLog = "src/station_state.text";
+    // This station's own state file, so several stations in one JVM do not overwrite each other
+    String stateFile;
     List<String> availableEnergySources;
+    BookingJournal journal;
+    EnergyAllocator energyAllocator;
+    // One lock per slot: a slot's owner, its calendar bit and its journal record change together
+    private final Object[] slotLocks;
+    // Source allocated to the booking in each calendar slot, -1 if none; guarded by energyAllocator
+    private final int[] energySourceOf;
+    // Energy a booking draws: one 30-minute slot at 22 kW
+    static final int BOOKING_WH = 11_000;
+
+    private static final LatencyHistogram bookLatency = Metrics.histogram("station.bookTimeslot");
+    private static final LatencyHistogram tryBookLatency = Metrics.histogram("station.tryBook");
+    private static final LatencyHistogram saveLatency = Metrics.histogram("station.saveState");
+    private static final LatencyHistogram loadLatency = Metrics.histogram("station.loadState");
+    private static final LatencyHistogram imageLoadLatency = Metrics.histogram("station.loadStartupImage");
+    private static final LatencyHistogram hydrateLatency = Metrics.histogram("station.hydrate");
+    private static final LongAdder booked = Metrics.counter("station.booked");
+    private static final LongAdder bookingConflicts = Metrics.counter("station.bookingConflicts");
+    private static final LongAdder canceled = Metrics.counter("station.canceled");
+    private static final LongAdder rebooked = Metrics.counter("station.rebooked");
+    private static final LongAdder stateWrites = Metrics.counter("station.stateWrites");
+    private static final LongAdder stateSavesSkipped = Metrics.counter("station.stateSavesSkipped");
+    private static final LongAdder availabilityPublished = Metrics.counter("station.availabilityPublished");
+    private static final LongAdder energyMovesFailed = Metrics.counter("station.energyMovesFailed");
+
+    // Runs the debounced saves of all stations
+    private static final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "station-state-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Bumped on every booking change; compared with the version last written to the state file
+    private final AtomicLong bookingVersion = new AtomicLong();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private volatile ScheduledFuture<?> pendingSave;
+    private volatile long saveDelayMillis;
+    private long savedBookingVersion = -1;
+    private long savedQueueVersion = -1;
+    private String savedStationId;
+    private String savedBookingLines;
+    private String savedQueueLine;
+
+    // Time range of every slot of the day, rendered once
+    private final String[] slotLabels;
+    // Replaced (copy-on-write) after every booking change, so listing the free slots takes no locks
+    private final AtomicReference<AvailabilitySnapshot> availability;
+    // The energy source listing and the sources it was rendered from
+    private List<String> listedEnergySources;
+    private String energySourceListing;
+    // Set by loadStartupImage() until the bookings and queue have been read from the image
+    private volatile StationImage pendingImage;
+    private volatile EventBus eventBus;
 
     public ChargingStation(String stationId) {
+        this(stationId, stationLog);
+    }
+
+    public ChargingStation(String stationId, String stateFile) {
+        this(stationId, stateFile, new TimeslotCalendar(1, 1), 0);
+    }
+
+    /**
+     * Creates a station whose availability is kept in one row of a calendar shared with other stations.
+     * Only day 0 of the calendar is used: this station's slot i is calendar slot i.
+     */
+    public ChargingStation(String stationId, String stateFile, TimeslotCalendar calendar, int calendarRow) {
         this.stationId = stationId;
-        this.availableTimeslots = new ArrayList<>();
-        this.bookedUsers = new ArrayList<>();
-        this.bookedSlots = new ArrayList<>();
-        this.queue = new LinkedList<>();
-        this.timeslots();
+        this.stateFile = stateFile;
+        this.queue = new ChargingQueue();
+        this.calendar = calendar;
+        this.calendarRow = calendarRow;
+        this.slotTable = new SlotTable(calendar.slotTimes());
+        this.slotLocks = new Object[slotTable.size()];
+        for (int i = 0; i < slotLocks.length; i++) {
+            slotLocks[i] = new Object();
+        }
+        this.slotLabels = new String[calendar.getSlotsPerDay()];
+        for (int i = 0; i < slotLabels.length; i++) {
+            slotLabels[i] = calendar.getTimeRange(i);
+        }
+        this.availability = new AtomicReference<>(AvailabilitySnapshot.of(0, calendar, calendarRow, slotLabels));
         this.availableEnergySources=new ArrayList<>();
         availableEnergySources.add("Solar");
         availableEnergySources.add("Wind");
         availableEnergySources.add("Hydro");
+        this.energyAllocator = new EnergyAllocator(availableEnergySources.toArray(new String[0]), calendar.getSlotsPerDay());
+        this.energySourceOf = new int[calendar.getSlotsPerDay()];
+        Arrays.fill(energySourceOf, -1);
+        applyDefaultForecasts();
+    }
+
+    private void applyDefaultForecasts() {
+        // Placeholder forecasts in Wh per slot: solar peaks around 1 PM, wind and hydro are flat
+        int slots = calendar.getSlotsPerDay();
+        int[] solar = new int[slots];
+        int[] wind = new int[slots];
+        int[] hydro = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            int minutes = calendar.timeOf(i) / 100 * 60 + calendar.timeOf(i) % 100;
+            solar[i] = (int) (60_000 * Math.max(0.0, 1.0 - Math.abs(minutes - 780) / 300.0));
+            wind[i] = 40_000;
+            hydro[i] = 50_000;
+        }
+        energyAllocator.setForecast(0, solar);
+        energyAllocator.setForecast(1, wind);
+        energyAllocator.setForecast(2, hydro);
+    }
+
+    /**
+     * Switches persistence to a binary journal next to the state file (e.g. src/station_state.journal):
+     * every booking change is a small append instead of a rewrite of the whole text state file.
+     * The first loadStateFromFile() afterwards migrates an existing text state file into the journal.
+     */
+    public synchronized void openJournal(BookingJournal.FsyncPolicy fsyncPolicy) {
+        String baseName = stateFile.endsWith(".text") ? stateFile.substring(0, stateFile.length() - 5) : stateFile;
+        this.journal = new BookingJournal(baseName, fsyncPolicy);
+    }
+
+    public synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error closing booking journal: " + e.getMessage());
+        }
+        journal = null;
     }
     
 
-    public void saveStateToFile() {
-        // Save the state of the charging station to a file using character streams
-        try (Writer writer = new FileWriter(stationLog)) {
-            // Write stationId
-            writer.write("stationId:" + stationId + "\n");
+    /**
+     * With a delay above 0, booking changes are not saved right away: the first change schedules a save
+     * after the delay, and every change until then is written by that one save. 0 restores saving after
+     * each console booking. Only used for the text state file; a journal persists every change anyway.
+     * The saver thread is a daemon, so call flushPendingSave() before exiting.
+     */
+    public void setSaveDelay(long delayMillis) {
+        this.saveDelayMillis = delayMillis;
+    }
 
-            // Write availableTimeslots
-            writer.write("availableTimeslots:");
-            for (int timeslot : bookedSlots) {
-                writer.write(timeslot + ",");
+    /**
+     * Publishes booking, cancellation, rebooking and energy selection events to the bus; null stops publishing.
+     * While a bus is set, console bookings are not saved right away and energy selections are not logged
+     * directly: that is left to the bus consumers (see StationEventHandlers). An event the bus cannot take is
+     * logged and saved by the station itself.
+     */
+    public void setEventBus(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Publishes the event to the bus. If the bus cannot take it (its ring is full or it is closed), the event is
+     * handled here the way the consumers would: it is logged right away, and a booking change is saved unless
+     * a journal or a delayed save already covers it.
+     */
+    private void publish(LogEvent event) {
+        EventBus bus = eventBus;
+        if (bus == null || bus.publish(event)) {
+            return;
+        }
+        StationEventHandlers.log(event, this);
+        if (event instanceof BookingEvent && journal == null && saveDelayMillis == 0) {
+            saveStateToFile();
+        }
+    }
+
+    /**
+     * Called after every change to the slot table and calendar: bumps the booking version and publishes
+     * a new availability snapshot built after the change.
+     */
+    private void bookingChanged() {
+        long version = bookingVersion.incrementAndGet();
+        AvailabilitySnapshot current = availability.get();
+        // A snapshot built now covers this change; one with a higher version already covers it too
+        while (current.getVersion() < version) {
+            if (availability.compareAndSet(current, AvailabilitySnapshot.of(version, calendar, calendarRow, slotLabels))) {
+                availabilityPublished.increment();
+                return;
             }
-            writer.write("\n");
+            current = availability.get();
+        }
+    }
 
-            // Write bookedUsers
-            writer.write("bookedUsers:");
-            for (User user : bookedUsers) {
-                writer.write(user.username + "-" + user.isAdmin + ",");
+    private void stateChanged() {
+        if (saveDelayMillis > 0 && journal == null && savePending.compareAndSet(false, true)) {
+            pendingSave = saver.schedule(() -> {
+                // Cleared first, so changes made while this save runs schedule the next one
+                savePending.set(false);
+                saveStateToFile();
+            }, saveDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels a delayed save that has not run yet and saves now, on the calling thread, so no change is lost
+     * when the JVM exits before the daemon saver thread gets to it. Does nothing if no save was scheduled.
+     */
+    public void flushPendingSave() {
+        ScheduledFuture<?> pending = pendingSave;
+        if (pending == null) {
+            return;
+        }
+        pending.cancel(false);
+        savePending.set(false);
+        // Waits for a save that is already running; skipped if that save wrote everything
+        saveStateToFile();
+    }
+
+    /**
+     * Saves the state: with a journal, writes a snapshot and compacts the journal; otherwise rewrites the whole
+     * text state file through a temporary file renamed over it, reusing the rendering of unchanged sections.
+     */
+    public synchronized void saveStateToFile() {
+        hydrate();
+        long start = System.nanoTime();
+        saveState();
+        saveLatency.recordSince(start);
+    }
+
+    private void saveState() {
+        if (journal != null) {
+            // Bookings are already journaled; saving writes a snapshot and compacts the journal
+            checkpointJournal();
+            return;
+        }
+        // Only sections that changed since the last save are rendered again, but the whole file is written;
+        // an unchanged state is not written at all
+        long bookings = bookingVersion.get();
+        long queueState = queue.getVersion();
+        boolean bookingsChanged = bookings != savedBookingVersion || savedBookingLines == null;
+        boolean queueChanged = queueState != savedQueueVersion || savedQueueLine == null;
+        if (!bookingsChanged && !queueChanged && stationId.equals(savedStationId) && new File(stateFile).exists()) {
+            stateSavesSkipped.increment();
+            return;
+        }
+        if (bookingsChanged) {
+            // Take one pass over the slot table so slots and users stay paired
+            StringBuilder slots = new StringBuilder();
+            StringBuilder users = new StringBuilder();
+            for (int i = 0; i < slotTable.size(); i++) {
+                User owner = slotTable.ownerAt(i);
+                if (owner != null) {
+                    slots.append(slotTable.timeAt(i)).append(",");
+                    users.append(owner.username).append("-").append(owner.isAdmin).append(",");
+                }
+            }
+            // The booked slots are kept under the original key
+            savedBookingLines = "availableTimeslots:" + slots + "\n" + "bookedUsers:" + users + "\n";
+        }
+        if (queueChanged) {
+            StringBuilder waiting = new StringBuilder();
+            for (User user : queue.inServiceOrder()) {
+                waiting.append(user.username).append("-").append(user.isAdmin).append(",");
             }
-            writer.write("\n");
+            savedQueueLine = "queue:" + waiting + "\n";
+        }
 
-            System.out.println("Charging station state saved to file.");
-        } 
-        catch (IOException e) {
+        // Write a temporary file and move it over the state file, so a crash never leaves half a state file behind
+        File file = new File(stateFile);
+        File temp = new File(stateFile + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write("stationId:" + stationId + "\n");
+            writer.write(savedBookingLines);
+            writer.write(savedQueueLine);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Error saving charging station state: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error replacing charging station state file: " + e.getMessage());
+            return;
         }
+        savedBookingVersion = bookings;
+        savedQueueVersion = queueState;
+        savedStationId = stationId;
+        stateWrites.increment();
+        System.out.println("Charging station state saved to file.");
     }
 
-    public void loadStateFromFile() {
-        // Load the state of the charging station from a file using character streams
-        try (Scanner scanner = new Scanner(new FileReader(stationLog))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(":");
-                String key = parts[0];
-                String value = parts[1];
+    public synchronized void loadStateFromFile() {
+        long start = System.nanoTime();
+        pendingImage = null;
+        loadState();
+        loadLatency.recordSince(start);
+    }
+
+    /**
+     * Returns the startup image next to the state file, e.g. src/station_state.image.
+     */
+    public String getImageFile() {
+        String baseName = stateFile.endsWith(".text") ? stateFile.substring(0, stateFile.length() - 5) : stateFile;
+        return baseName + ".image";
+    }
+
+    /**
+     * Writes the startup image, e.g. at shutdown after the last save. Until the next booking change
+     * the station can be started from it with loadStartupImage().
+     */
+    public synchronized void saveStartupImage() {
+        hydrate();
+        try {
+            StationImage.write(new File(getImageFile()), stationId, slotTable, queue.inServiceOrder());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error saving charging station startup image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the station from its startup image (a binary StationImage) instead of the state file, for a fast
+     * start. Only the image header is read:
+     * availability is served from its slot bitmap at once, and the bookings and queue are read the first
+     * time anything needs them (or on hydrate()). Returns false, leaving the state as it was, if there is
+     * no image, it is damaged, or the state file or journal was written after it; load the state file then.
+     */
+    public synchronized boolean loadStartupImage() {
+        long start = System.nanoTime();
+        File image = new File(getImageFile());
+        long stateWritten = journal != null ? journal.lastModified() : new File(stateFile).lastModified();
+        if (!image.exists() || image.lastModified() < stateWritten) {
+            return false;
+        }
+        StationImage mapped;
+        try {
+            mapped = StationImage.map(image, calendar.getSlotsPerDay());
+        } catch (IOException e) {
+            System.err.println("Error reading charging station startup image, loading the state file instead: " + e.getMessage());
+            return false;
+        }
+        clearBookings();
+        for (int i = 0; i < calendar.getSlotsPerDay(); i++) {
+            if (mapped.isBooked(i)) {
+                calendar.markBooked(calendarRow, 0, i);
+            }
+        }
+        pendingImage = mapped;
+        bookingChanged();
+        imageLoadLatency.recordSince(start);
+        return true;
+    }
+
+    /**
+     * Returns true once the bookings and queue are in memory; false only between loadStartupImage() and first use.
+     */
+    public boolean isHydrated() {
+        return pendingImage == null;
+    }
+
+    /**
+     * Reads the bookings and queue from the startup image now instead of on first use.
+     * Every method that needs them calls this first; it costs one volatile read once hydrated.
+     */
+    public void hydrate() {
+        if (pendingImage != null) {
+            hydrateFromImage();
+        }
+    }
+
+    private synchronized void hydrateFromImage() {
+        StationImage image = pendingImage;
+        if (image == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<User> waiting = new ArrayList<>();
+        try {
+            image.hydrate(new StationImage.Hydration() {
+                @Override
+                public void stationId(String imageStationId) {
+                    stationId = imageStationId;
+                }
+
+                @Override
+                public void booked(int slotIndex, String username, boolean isAdmin) {
+                    // The calendar already has the slot booked from the bitmap
+                    slotTable.claim(slotIndex, UserRegistry.get().intern(username), isAdmin);
+                }
+
+                @Override
+                public void queued(String username, boolean isAdmin) {
+                    waiting.add(UserRegistry.get().user(username, isAdmin));
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error reading charging station startup image, loading the state file instead: " + e.getMessage());
+            pendingImage = null;
+            loadState();
+            return;
+        }
+        queue.restore(waiting);
+        pendingImage = null;
+        hydrateLatency.recordSince(start);
+    }
+
+    private void loadState() {
+        if (journal != null && journal.exists() && loadStateFromJournal()) {
+            return;
+        }
+        // Load the state of the charging station from a file using character streams.
+        // The whole file is parsed and checked before anything is applied, so a damaged file leaves the state as it was.
+        String loadedStationId = stationId;
+        List<Integer> bookedSlots = new ArrayList<>();
+        List<User> bookedUsers = new ArrayList<>();
+        List<User> waiting = null;
+        try {
+            List<String> lines = Files.readAllLines(new File(stateFile).toPath(), StandardCharsets.UTF_8);
+            for (int n = 0; n < lines.size(); n++) {
+                String line = lines.get(n);
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("line " + (n + 1) + " has no key: " + line);
+                }
+                String key = line.substring(0, colon);
+                String value = line.substring(colon + 1);
 
                 switch (key) {
                     case "stationId":
-                        stationId = value;
+                        loadedStationId = value;
                         break;
                     case "availableTimeslots":
-                        String[] timeslots = value.split(",");
                         bookedSlots.clear();
-                        for (String timeslot : timeslots) {
-                            availableTimeslots.remove(Integer.valueOf(Integer.parseInt(timeslot)));
-                            bookedSlots.add(Integer.parseInt(timeslot));
+                        for (String timeslot : value.split(",")) {
+                            if (timeslot.isEmpty()) {
+                                continue;
+                            }
+                            int slot;
+                            try {
+                                slot = Integer.parseInt(timeslot.trim());
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("line " + (n + 1) + " has an invalid timeslot: " + timeslot);
+                            }
+                            if (calendar.slotOf(slot) < 0) {
+                                throw new IllegalArgumentException("line " + (n + 1) + " has an unknown timeslot: " + slot);
+                            }
+                            bookedSlots.add(slot);
                         }
                         break;
                     case "bookedUsers":
-                        String[] users = value.split(",");
-                        bookedUsers.clear();
-                        for (String userInfo : users) {
-                            String[] userParts = userInfo.split("-");
-                            String username = userParts[0];
-                            boolean isAdmin = Boolean.parseBoolean(userParts[1]);
-                            bookedUsers.add(new User(username, isAdmin));
-                            queue.add(new User(username, isAdmin));
-                        }
+                        bookedUsers = parseUsers(value, n + 1);
+                        break;
+                    case "queue":
+                        waiting = parseUsers(value, n + 1);
                         break;
+                    default:
+                        throw new IllegalArgumentException("line " + (n + 1) + " has an unknown key: " + key);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading charging station state, keeping the current state: " + e.getMessage());
+            return;
+        }
+        if (bookedSlots.size() != bookedUsers.size()) {
+            System.err.println("Charging station state lists " + bookedSlots.size() + " timeslots but "
+                    + bookedUsers.size() + " users; only complete pairs are loaded.");
+        }
+
+        stationId = loadedStationId;
+        // The n-th booked slot belongs to the n-th booked user
+        clearBookings();
+        for (int i = 0; i < bookedSlots.size() && i < bookedUsers.size(); i++) {
+            restoreBooking(bookedSlots.get(i), bookedUsers.get(i));
+        }
+        if (waiting != null) {
+            queue.restore(waiting);
+        } else {
+            // Older state files have no queue; queue the booked users, skipping those already waiting
+            for (User user : bookedUsers) {
+                queue.offer(user);
+            }
+        }
+        System.out.println("Charging station state loaded from file.");
+
+        if (journal != null && !journal.exists() && new File(stateFile).exists()) {
+            // Migrate the text state into the journal's first snapshot; an existing (damaged) journal is left alone
+            checkpointJournal();
+            System.out.println("Charging station state migrated to " + journal.getSnapshotFile());
+        }
+    }
+
+    /**
+     * Parses "name-isAdmin," entries. The username is everything before the last '-'.
+     */
+    private static List<User> parseUsers(String value, int lineNumber) {
+        List<User> users = new ArrayList<>();
+        for (String userInfo : value.split(",")) {
+            if (userInfo.isEmpty()) {
+                continue;
+            }
+            int dash = userInfo.lastIndexOf('-');
+            String flag = dash < 0 ? "" : userInfo.substring(dash + 1);
+            if (dash <= 0 || !(flag.equals("true") || flag.equals("false"))) {
+                throw new IllegalArgumentException("line " + lineNumber + " has an invalid user entry: " + userInfo);
+            }
+            users.add(UserRegistry.get().user(userInfo.substring(0, dash), Boolean.parseBoolean(flag)));
+        }
+        return users;
+    }
+
+    /**
+     * Replays the journal into a copy of the bookings and queue and applies it only if the replay succeeds.
+     * The queue is the snapshot's, changed by the bookings and cancellations journaled since.
+     * Returns false, leaving the current state as it was, if the snapshot or journal cannot be read.
+     */
+    private boolean loadStateFromJournal() {
+        Map<Integer, User> owners = new LinkedHashMap<>();
+        // The queue in service order, by username; starts from the snapshot's queue
+        Map<String, User> waiting = new LinkedHashMap<>();
+        boolean[] inJournal = {false};
+        try {
+            journal.replay(new BookingJournal.Replay() {
+                @Override
+                public void booked(int slot, String username, boolean isAdmin) {
+                    User user = UserRegistry.get().user(username, isAdmin);
+                    if (calendar.slotOf(slot) >= 0) {
+                        owners.putIfAbsent(slot, user);
+                    }
+                    // A booking made after the snapshot queued its user, as BookingServer does
+                    if (inJournal[0]) {
+                        waiting.putIfAbsent(username, user);
+                    }
+                }
+
+                @Override
+                public void canceled(int slot, String username) {
+                    User owner = owners.get(slot);
+                    if (owner != null && owner.username.equals(username)) {
+                        owners.remove(slot);
+                    }
+                    // Users leave the queue with their last booking; a rebooked user still owns the new slot
+                    if (inJournal[0] && !ownsAny(owners, username)) {
+                        waiting.remove(username);
+                    }
+                }
+
+                @Override
+                public void queued(String username, boolean isAdmin) {
+                    waiting.putIfAbsent(username, UserRegistry.get().user(username, isAdmin));
+                }
+
+                @Override
+                public void snapshotRead(boolean hasQueue) {
+                    if (!hasQueue) {
+                        // No saved queue; queue the owners of the snapshot's bookings
+                        for (User owner : owners.values()) {
+                            waiting.putIfAbsent(owner.username, owner);
+                        }
+                    }
+                    inJournal[0] = true;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error loading charging station journal, loading the state file instead: " + e.getMessage());
+            return false;
+        }
+        clearBookings();
+        owners.forEach(this::restoreBooking);
+        queue.restore(new ArrayList<>(waiting.values()));
+        System.out.println("Charging station state loaded from journal.");
+        return true;
+    }
+
+    private static boolean ownsAny(Map<Integer, User> owners, String username) {
+        for (User owner : owners.values()) {
+            if (owner.username.equals(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkpointJournal() {
+        try {
+            journal.checkpoint(stationId, slotTable, queue.inServiceOrder());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error writing charging station snapshot: " + e.getMessage());
+        }
+    }
+
+    private void clearBookings() {
+        for (int i = 0; i < slotTable.size(); i++) {
+            calendar.markFree(calendarRow, 0, i);
+        }
+        slotTable.clear();
+        bookingChanged();
+        synchronized (energyAllocator) {
+            energyAllocator.clearAllocations();
+            Arrays.fill(energySourceOf, -1);
+        }
+    }
+
+    private void restoreBooking(int slot, User user) {
+        int index = calendar.slotOf(slot);
+        if (index >= 0 && slotTable.claim(index, user)) {
+            calendar.markBooked(calendarRow, 0, index);
+            bookingChanged();
+        }
+    }
+
+    private void journalChange(int fromSlot, int toSlot, User user, boolean booked) {
+        BookingJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (fromSlot == toSlot) {
+                if (booked) {
+                    current.appendBooked(toSlot, user);
+                } else {
+                    current.appendCanceled(fromSlot, user);
                 }
+            } else {
+                current.appendRebooked(fromSlot, toSlot, user);
+            }
+            if (current.shouldCompact()) {
+                current.checkpoint(stationId, slotTable, queue.inServiceOrder());
             }
-            System.out.println("Charging station state loaded from file.");
         } catch (IOException e) {
             e.printStackTrace();
-            System.err.println("Error loading charging station state: " + e.getMessage());
+            System.err.println("Error journaling booking of " + user.username + ": " + e.getMessage());
         }
     }
 
 
     public int[] bookTimeslot(User user, int choice) {
-        // Using try-with-resources to automatically close the Scanner
+        // The Scanner is not closed: closing it would close System.in for the rest of the program
+        return bookTimeslot(user, choice, new Scanner(System.in));
+    }
+
+    /**
+     * Asks for confirmation and an energy source on the given scanner, which stays open afterwards.
+     */
+    public int[] bookTimeslot(User user, int choice, Scanner scanner) {
         int[] choices = {-1,-1} ;
         choice--;
  
-        try (Scanner scanner = new Scanner(System.in)) {
-            
-            // Check if there is an empty timeslot
-            if (!availableTimeslots.isEmpty() && choice < availableTimeslots.size() && choice>0) {
-                System.out.println("Do you want to confirm this booking? (yes/no)");
-    
-                String confirmation = scanner.nextLine().toLowerCase();
-    
-                if (confirmation.equals("yes")) {
-                    int slot = availableTimeslots.get(choice);
-                    //System.out.println(user.username + " booked timeslot " + getTimeRange(slot) + " at " + getCurrentTime());
-
-                    bookedUsers.add(user);
-                    bookedSlots.add(slot);
-                    availableTimeslots.remove(Integer.valueOf(slot));
-                    choices[0] = slot;
-                    saveStateToFile();
-                    displayAvailableEnergySources();
-                    int energyChoice = scanner.nextInt();
-                    choices[1] = energyChoice;
+        AvailabilitySnapshot available = getAvailability();
+        
+        // Check if there is an empty timeslot
+        if (!available.isEmpty() && choice < available.size() && choice>0) {
+            System.out.println("Do you want to confirm this booking? (yes/no)");
 
-                } else if (confirmation.equals("no")) {
-                   System.out.println("Booking canceled.");
-    
-                } else {
-                    System.out.println("Invalid input. Booking canceled.");
+            String confirmation = scanner.nextLine().toLowerCase();
+
+            if (confirmation.equals("yes")) {
+                // Timed from confirmation until the booking is stored, without the wait for console input
+                long start = System.nanoTime();
+                int slot = available.timeAt(choice);
+                //System.out.println(user.username + " booked timeslot " + getTimeRange(slot) + " at " + getCurrentTime());
+
+                // Another user may have taken the slot while we were waiting for confirmation
+                if (!tryBook(user, slot)) {
+                    bookLatency.recordSince(start);
+                    System.out.println("Timeslot " + available.labelAt(choice) + " is no longer available. Booking canceled.");
+                    return choices;
+                }
+                choices[0] = slot;
+                if (journal == null && saveDelayMillis == 0 && eventBus == null) {
+                    saveStateToFile();
                 }
-            } 
+                bookLatency.recordSince(start);
+                displayAvailableEnergySources();
+                int energyChoice = scanner.nextInt();
+                choices[1] = energyChoice;
+
+            } else if (confirmation.equals("no")) {
+               System.out.println("Booking canceled.");
+
+            } else {
+                System.out.println("Invalid input. Booking canceled.");
+            }
         } 
         return choices;
     }
 
+    /**
+     * Books the timeslot starting at the given time (e.g. 930) for the user without any console interaction.
+     * Safe to call from many threads; returns false if the slot does not exist or is already taken.
+     * Under the slot's own lock, the slot is claimed with a compare-and-set in the SlotTable and its calendar bit
+     * and journal record are updated. Bookings are counted and timed in Metrics.
+     * With a journal open the booking is appended to it; otherwise call saveStateToFile() to persist it.
+     */
+    public boolean tryBook(User user, int slot) {
+        hydrate();
+        long start = System.nanoTime();
+        int index = calendar.slotOf(slot);
+        if (index < 0) {
+            bookingConflicts.increment();
+            tryBookLatency.recordSince(start);
+            return false;
+        }
+        synchronized (slotLocks[index]) {
+            if (!slotTable.claim(index, user)) {
+                bookingConflicts.increment();
+                tryBookLatency.recordSince(start);
+                return false;
+            }
+            calendar.markBooked(calendarRow, 0, index);
+            // Journaled under the slot lock, so the records of one slot are in the order the changes happened
+            journalChange(slot, slot, user, true);
+        }
+        bookingChanged();
+        stateChanged();
+        if (eventBus != null) {
+            publish(BookingEvent.booked(stationId, user, slot));
+        }
+        booked.increment();
+        tryBookLatency.recordSince(start);
+        return true;
+    }
+
+    /**
+     * Cancels the user's booking of the given timeslot. Returns false if the user does not hold it.
+     */
+    public boolean cancel(User user, int slot) {
+        hydrate();
+        int index = calendar.slotOf(slot);
+        if (index < 0) {
+            return false;
+        }
+        synchronized (slotLocks[index]) {
+            if (!slotTable.release(index, user)) {
+                return false;
+            }
+            calendar.markFree(calendarRow, 0, index);
+            releaseEnergy(index);
+            journalChange(slot, slot, user, false);
+        }
+        bookingChanged();
+        stateChanged();
+        if (eventBus != null) {
+            publish(BookingEvent.canceled(stationId, user, slot));
+        }
+        canceled.increment();
+        return true;
+    }
+
+    /**
+     * Returns true if the user holds any timeslot at this station.
+     */
+    public boolean hasBooking(User user) {
+        hydrate();
+        int userId = user.id >= 0 ? user.id : UserRegistry.get().idOf(user.username);
+        if (userId < 0) {
+            return false;
+        }
+        for (int i = 0; i < slotTable.size(); i++) {
+            if (slotTable.ownerIdAt(i) == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the user's booking from one timeslot to another. Returns false if the user does not hold the old
+     * slot or the new one is taken. The new slot is claimed before the old one is released, so the user never
+     * ends up without a slot if the new one is taken.
+     */
+    public boolean rebook(User user, int fromSlot, int toSlot) {
+        hydrate();
+        int fromIndex = calendar.slotOf(fromSlot);
+        int toIndex = calendar.slotOf(toSlot);
+        if (fromIndex < 0 || toIndex < 0 || fromIndex == toIndex) {
+            return false;
+        }
+        // Both slot locks, always taken in index order so two rebookings cannot deadlock
+        synchronized (slotLocks[Math.min(fromIndex, toIndex)]) {
+            synchronized (slotLocks[Math.max(fromIndex, toIndex)]) {
+                // Checked before the new slot is claimed, so unlocked readers never see a booking the user did not hold;
+                // the owner cannot change while the old slot's lock is held
+                int userId = UserRegistry.get().intern(user);
+                if (slotTable.ownerIdAt(fromIndex) != userId || !slotTable.claim(toIndex, userId, user.isAdmin)) {
+                    return false;
+                }
+                slotTable.release(fromIndex, userId);
+                calendar.markBooked(calendarRow, 0, toIndex);
+                calendar.markFree(calendarRow, 0, fromIndex);
+                if (!moveEnergy(fromIndex, toIndex)) {
+                    energyMovesFailed.increment();
+                    System.err.println("No energy source has capacity left for timeslot " + toSlot
+                            + "; the energy of " + user.username + "'s booking must be allocated again.");
+                }
+                journalChange(fromSlot, toSlot, user, true);
+            }
+        }
+        bookingChanged();
+        stateChanged();
+        if (eventBus != null) {
+            publish(BookingEvent.rebooked(stationId, user, fromSlot, toSlot));
+        }
+        rebooked.increment();
+        return true;
+    }
+
+    /**
+     * Allocates energy for the booking of the given timeslot, from the chosen source (1-based, as listed by
+     * displayAvailableEnergySources) if it has capacity left, otherwise from the least loaded source.
+     * Returns the name of the source used, or null if the timeslot is not booked or no source can supply the booking.
+     */
+    public String allocateEnergy(int timeslot, int choice) {
+        hydrate();
+        int index = calendar.slotOf(timeslot);
+        if (index < 0) {
+            return null;
+        }
+        int preferred = choice >= 1 && choice <= energyAllocator.getSourceCount() ? choice - 1 : -1;
+        int source;
+        // Under the slot lock, so the booking cannot be canceled between the check and the allocation
+        synchronized (slotLocks[index]) {
+            if (slotTable.isFree(index)) {
+                return null;
+            }
+            synchronized (energyAllocator) {
+                if (energySourceOf[index] >= 0) {
+                    energyAllocator.release(index, energySourceOf[index], BOOKING_WH);
+                }
+                source = energyAllocator.allocate(index, preferred, BOOKING_WH);
+                energySourceOf[index] = source;
+            }
+        }
+        if (source < 0) {
+            return null;
+        }
+        String sourceName = energyAllocator.getSourceName(source);
+        if (eventBus != null) {
+            publish(EnergySelectionEvent.selected(stationId, timeslot, List.of(sourceName)));
+        } else {
+            LogManager.logEnergySources(timeslot, List.of(sourceName));
+        }
+        return sourceName;
+    }
+
+    /**
+     * Replaces the forecast of one source (Wh per slot of the day) and reassigns the energy of every
+     * booking, keeping each on its current source where that still fits.
+     * Returns the number of bookings that no source can supply any more.
+     */
+    public int updateForecast(String sourceName, int[] whPerSlot) {
+        int source = energyAllocator.indexOf(sourceName);
+        if (source < 0) {
+            throw new IllegalArgumentException("Unknown energy source " + sourceName);
+        }
+        synchronized (energyAllocator) {
+            energyAllocator.setForecast(source, whPerSlot);
+            return reoptimizeEnergy();
+        }
+    }
+
+    private int reoptimizeEnergy() {
+        int count = 0;
+        for (int source : energySourceOf) {
+            if (source >= 0) {
+                count++;
+            }
+        }
+        int[] slots = new int[count];
+        int[] demand = new int[count];
+        int[] preferred = new int[count];
+        for (int i = 0, n = 0; i < energySourceOf.length; i++) {
+            if (energySourceOf[i] >= 0) {
+                slots[n] = i;
+                demand[n] = BOOKING_WH;
+                preferred[n++] = energySourceOf[i];
+            }
+        }
+        int[] assignment = new int[count];
+        int unassigned = energyAllocator.reoptimize(slots, demand, preferred, assignment);
+        for (int n = 0; n < count; n++) {
+            energySourceOf[slots[n]] = assignment[n];
+        }
+        return unassigned;
+    }
+
+    private void releaseEnergy(int index) {
+        synchronized (energyAllocator) {
+            if (energySourceOf[index] >= 0) {
+                energyAllocator.release(index, energySourceOf[index], BOOKING_WH);
+                energySourceOf[index] = -1;
+            }
+        }
+    }
+
+    /**
+     * Moves a booking's energy to another slot, on the same source if it has room there.
+     * Returns false if the booking had energy and no source can supply it in the new slot.
+     */
+    private boolean moveEnergy(int fromIndex, int toIndex) {
+        synchronized (energyAllocator) {
+            int source = energySourceOf[fromIndex];
+            if (source < 0) {
+                return true;
+            }
+            energyAllocator.release(fromIndex, source, BOOKING_WH);
+            energySourceOf[fromIndex] = -1;
+            energySourceOf[toIndex] = energyAllocator.allocate(toIndex, source, BOOKING_WH);
+            return energySourceOf[toIndex] >= 0;
+        }
+    }
+
+    /**
+     * Returns the latest availability snapshot. Never blocks; the snapshot does not change after it is returned.
+     */
+    public AvailabilitySnapshot getAvailability() {
+        return availability.get();
+    }
+
+    /**
+     * Returns the start times of the free slots as an unmodifiable list.
+     */
+    public List<Integer> getAvailableTimeslots() {
+        return availability.get().times();
+    }
+
+    public List<Integer> getBookedSlots() {
+        hydrate();
+        List<Integer> booked = new ArrayList<>();
+        for (int i = 0; i < slotTable.size(); i++) {
+            if (!slotTable.isFree(i)) {
+                booked.add(slotTable.timeAt(i));
+            }
+        }
+        return booked;
+    }
+
+    public List<User> getBookedUsers() {
+        hydrate();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < slotTable.size(); i++) {
+            User owner = slotTable.ownerAt(i);
+            if (owner != null) {
+                users.add(owner);
+            }
+        }
+        return users;
+    }
+
     public void displayAvailableEnergySources() {
-        System.out.println("Available energy sources:");
-        for (int i = 0; i < availableEnergySources.size(); i++) {
-            System.out.println((i + 1) + ". " + availableEnergySources.get(i));
+        System.out.print(getEnergySourceListing());
+    }
+
+    /**
+     * Returns the numbered energy source listing, rendered again only when availableEnergySources changes.
+     */
+    public synchronized String getEnergySourceListing() {
+        if (energySourceListing == null || !listedEnergySources.equals(availableEnergySources)) {
+            StringBuilder listing = new StringBuilder("Available energy sources:\n");
+            for (int i = 0; i < availableEnergySources.size(); i++) {
+                listing.append(i + 1).append(". ").append(availableEnergySources.get(i)).append('\n');
+            }
+            listedEnergySources = new ArrayList<>(availableEnergySources);
+            energySourceListing = listing.toString();
         }
+        return energySourceListing;
     }
     
     
     public String getTimeRange(int timeslot) {
-        // Assuming business hours from 9:00 AM to 5:00 PM with 30-minute slots
-        int startTime = timeslot; // 9:00 AM represented as 900 in 24-hour format
-    
-        int startHour = startTime / 100;
-        int startMinute = startTime % 100;
-        timeslot +=30;
-        int selectedHour = timeslot / 100;
-        int selectedMinute = timeslot % 100;
-    
-        return String.format("%02d:%02d AM - %02d:%02d AM", startHour, startMinute, selectedHour, selectedMinute);
+        // Business hours from 9:00 AM to 5:00 PM with 30-minute slots, as laid out by the calendar
+        int slot = calendar.slotOf(timeslot);
+        if (slot < 0) {
+            return "Invalid timeslot " + timeslot;
+        }
+        return slotLabels[slot];
     }
     
 
     public void showAvailableTimeslots() {
         // Display selected available timeslots
-        int i = 1;
-        System.out.println("Available timeslots:");
-        for(int time: availableTimeslots){
-            System.out.println(i+". " + this.getTimeRange(time));
-            i++;
-        }    
+        System.out.print(availability.get().listing());
+
+    }
 
+    /**
+     * Returns the queue, reading it from the startup image first if needed.
+     */
+    public ChargingQueue getQueue() {
+        hydrate();
+        return queue;
     }
 
     public void prioritizeQueue(User admin) {
+        hydrate();
         // Implement queue prioritization logic
-        if (queue.contains(admin)) {
-            // Admin is already in the queue; move them to the front
-            queue.remove(admin);
-            ((LinkedList<User>) queue).addFirst(admin);
+        // Users are matched by username, so an admin loaded from file is found too
+        if (queue.prioritize(admin)) {
+            // Admin is already in the queue; moved to the front
             System.out.println("Queue prioritized. " + admin.username + " moved to the front at " + getCurrentTime());
+            stateChanged();
         } else {
             System.out.println(admin.username + " is not in the queue.");
         }
     }
 
     public String getCurrentTime() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        return sdf.format(new Date());
+        return LogClock.currentTime();
     }
 
     public String getSource(int choice){
@@ -205,18 +1062,4 @@ class ChargingStation {
         return "no";
     }
 
-    private void timeslots(){
-
-        int start = 900;
-
-        while(start <= 1700){
-            availableTimeslots.add(start);
-            if(start%100 == 0)
-                start+=30;
-            else
-                start+=70;
-        }
-    }
-
 }
-
@@ -0,0 +1,148 @@
+/**
+ * DataExchangeBenchmark class compares the ways a payload can be exchanged through a file:
+ * unbuffered byte streams with a 1 KB buffer (as DataExchangeSimulation did), character streams,
+ * buffered byte streams, and the NIO DataExchangeChannel. Each variant sends a payload file into an
+ * exchange file and receives it out again into a destination file, and the copy is checked by size.
+ * Payloads grow by 32x from 1 KB up to the maximum (default 1 GB).
+ * Run with: DataExchangeBenchmark [maxBytes] [directory].
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public class DataExchangeBenchmark {
+
+    interface Variant {
+        void exchange(File source, File exchange, File target) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long maxBytes = args.length > 0 ? Long.parseLong(args[0]) : 1L << 30;
+        File directory = new File(args.length > 1 ? args[1] : "benchmark");
+        directory.mkdirs();
+        File source = new File(directory, "payload.bin");
+        File exchange = new File(directory, "exchange.bin");
+        File target = new File(directory, "received.bin");
+
+        String[] names = {"byte (1 KB reads)", "char", "buffered byte", "NIO channel"};
+        Variant[] variants = {
+                DataExchangeBenchmark::byteStreams,
+                DataExchangeBenchmark::charStreams,
+                DataExchangeBenchmark::bufferedStreams,
+                DataExchangeBenchmark::channel
+        };
+
+        System.out.printf("%-12s %-20s %12s %12s%n", "payload", "variant", "ms", "MB/s");
+        for (long size = 1024; size <= maxBytes; size *= 32) {
+            writePayload(source, size);
+            for (int v = 0; v < variants.length; v++) {
+                // Small payloads are repeated so the timing is not just noise
+                int rounds = (int) Math.max(1, Math.min(1000, (8L << 20) / size));
+                variants[v].exchange(source, exchange, target); // warm-up
+                long start = System.nanoTime();
+                for (int r = 0; r < rounds; r++) {
+                    variants[v].exchange(source, exchange, target);
+                }
+                long elapsed = (System.nanoTime() - start) / rounds;
+                if (target.length() != size) {
+                    throw new IllegalStateException(names[v] + " received " + target.length() + " of " + size + " bytes");
+                }
+                System.out.printf("%-12s %-20s %12.3f %12.1f%n",
+                        formatSize(size), names[v], elapsed / 1e6, size / (elapsed / 1e9) / (1 << 20));
+            }
+        }
+        source.delete();
+        exchange.delete();
+        target.delete();
+    }
+
+    private static void byteStreams(File source, File exchange, File target) throws IOException {
+        copyBytes(source, exchange, false);
+        copyBytes(exchange, target, false);
+    }
+
+    private static void bufferedStreams(File source, File exchange, File target) throws IOException {
+        copyBytes(source, exchange, true);
+        copyBytes(exchange, target, true);
+    }
+
+    private static void copyBytes(File from, File to, boolean buffered) throws IOException {
+        try (InputStream in = buffered ? new BufferedInputStream(new FileInputStream(from), 64 * 1024) : new FileInputStream(from);
+             OutputStream out = buffered ? new BufferedOutputStream(new FileOutputStream(to), 64 * 1024) : new FileOutputStream(to)) {
+            byte[] buffer = new byte[buffered ? 8192 : 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void charStreams(File source, File exchange, File target) throws IOException {
+        copyChars(source, exchange);
+        copyChars(exchange, target);
+    }
+
+    private static void copyChars(File from, File to) throws IOException {
+        try (Reader in = new FileReader(from, StandardCharsets.US_ASCII);
+             Writer out = new FileWriter(to, StandardCharsets.US_ASCII)) {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void channel(File source, File exchange, File target) throws IOException {
+        try (DataExchangeChannel channel = new DataExchangeChannel(exchange.getPath(), true)) {
+            channel.sendFile(source);
+            channel.receiveTo(target);
+        }
+    }
+
+    /**
+     * Writes an ASCII payload of the given size, so the char variant copies it byte for byte.
+     */
+    private static void writePayload(File file, long size) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20);
+        while (chunk.hasRemaining()) {
+            chunk.put((byte) ('a' + chunk.position() % 26));
+        }
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            while (written < size) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), size - written));
+                while (chunk.hasRemaining()) {
+                    written += out.write(chunk);
+                }
+            }
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes >= 1 << 30) {
+            return (bytes >> 30) + " GB";
+        }
+        if (bytes >= 1 << 20) {
+            return (bytes >> 20) + " MB";
+        }
+        return (bytes >> 10) + " KB";
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * DataExchangeChannel class carries payloads between stations and the energy management system
+ * through a shared exchange file. Every payload is a frame [long length][bytes], so payloads of any
+ * size can follow each other and the receiver always knows where one ends.
+ * Payloads are written and read with a FileChannel and direct buffers, and whole files are moved
+ * with transferFrom/transferTo so the kernel copies them without passing the bytes through the Java heap.
+ * The channel counts bytes and time spent in each direction and reports the throughput.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+class DataExchangeChannel implements Closeable {
+    private static final int HEADER_BYTES = Long.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_BYTES);
+    private long readPosition;
+    private long bytesSent;
+    private long sendNanos;
+    private long bytesReceived;
+    private long receiveNanos;
+
+    /**
+     * Opens the exchange file, creating it if needed. With truncate an existing file is emptied first;
+     * otherwise receiving starts at its first frame.
+     */
+    public DataExchangeChannel(String fileName, boolean truncate) throws IOException {
+        if (truncate) {
+            this.channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            this.channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Appends the remaining bytes of the buffer as one frame and returns the payload length.
+     */
+    public synchronized long send(ByteBuffer payload) throws IOException {
+        long start = System.nanoTime();
+        long length = payload.remaining();
+        long position = writeHeader(length);
+        while (payload.hasRemaining()) {
+            position += channel.write(payload, position);
+        }
+        record(length, System.nanoTime() - start, true);
+        return length;
+    }
+
+    public long send(byte[] payload) throws IOException {
+        return send(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Appends the whole content of a file as one frame, copied by the kernel, and returns its length.
+     */
+    public synchronized long sendFile(File source) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long length = in.size();
+            long position = writeHeader(length);
+            long copied = 0;
+            while (copied < length) {
+                long n = channel.transferFrom(in, position + copied, length - copied);
+                if (n <= 0) {
+                    throw new IOException("Source file " + source + " ended early at " + copied + " of " + length + " bytes");
+                }
+                copied += n;
+            }
+            record(length, System.nanoTime() - start, true);
+            return length;
+        }
+    }
+
+    /**
+     * Returns true if a complete frame is waiting to be received.
+     */
+    public synchronized boolean hasFrame() throws IOException {
+        return nextLength() >= 0;
+    }
+
+    /**
+     * Reads the next frame into a new direct buffer, ready to be read, or returns null if no complete
+     * frame is waiting. Frames larger than 2 GB must be received with receiveTo().
+     */
+    public synchronized ByteBuffer receive() throws IOException {
+        long start = System.nanoTime();
+        long length = nextLength();
+        if (length < 0) {
+            return null;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Frame of " + length + " bytes is too large for a buffer; use receiveTo()");
+        }
+        ByteBuffer payload = ByteBuffer.allocateDirect((int) length);
+        long position = readPosition + HEADER_BYTES;
+        while (payload.hasRemaining()) {
+            int n = channel.read(payload, position);
+            if (n < 0) {
+                throw new IOException("Exchange file ended inside a frame at " + position);
+            }
+            position += n;
+        }
+        payload.flip();
+        readPosition = position;
+        record(length, System.nanoTime() - start, false);
+        return payload;
+    }
+
+    /**
+     * Copies the next frame into the target file, replacing it, and returns the payload length,
+     * or -1 if no complete frame is waiting.
+     */
+    public synchronized long receiveTo(File target) throws IOException {
+        long start = System.nanoTime();
+        long length = nextLength();
+        if (length < 0) {
+            return -1;
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = readPosition + HEADER_BYTES;
+            long copied = 0;
+            while (copied < length) {
+                long n = channel.transferTo(position + copied, length - copied, out);
+                if (n <= 0) {
+                    throw new IOException("Exchange file ended inside a frame at " + (position + copied));
+                }
+                copied += n;
+            }
+            readPosition = position + length;
+        }
+        record(length, System.nanoTime() - start, false);
+        return length;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized double getSendBytesPerSecond() {
+        return sendNanos == 0 ? 0 : bytesSent * 1e9 / sendNanos;
+    }
+
+    public synchronized double getReceiveBytesPerSecond() {
+        return receiveNanos == 0 ? 0 : bytesReceived * 1e9 / receiveNanos;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private long writeHeader(long length) throws IOException {
+        long position = channel.size();
+        header.clear();
+        header.putLong(length).flip();
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        return position;
+    }
+
+    /**
+     * Returns the length of the frame at the read position, or -1 if it is not completely written yet.
+     */
+    private long nextLength() throws IOException {
+        long size = channel.size();
+        if (size - readPosition < HEADER_BYTES) {
+            return -1;
+        }
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, readPosition + header.position()) < 0) {
+                return -1;
+            }
+        }
+        long length = header.getLong(0);
+        if (length < 0) {
+            throw new IOException("Damaged frame header at " + readPosition);
+        }
+        return size - readPosition - HEADER_BYTES >= length ? length : -1;
+    }
+
+    private void record(long bytes, long nanos, boolean sent) {
+        if (sent) {
+            bytesSent += bytes;
+            sendNanos += nanos;
+        } else {
+            bytesReceived += bytes;
+            receiveNanos += nanos;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 /**
  * DataExchangeSimulation class simulates data exchange using byte and character streams.
- * It demonstrates writing and reading messages to/from files using both stream types.
+ * It demonstrates writing and reading messages to/from files using both stream types,
+ * and exchanging them as length-prefixed frames over a DataExchangeChannel.
+ * Messages of any length are read back completely.
  * 
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class DataExchangeSimulation {
     public void simulateDataExchange() {
@@ -15,13 +19,16 @@ public class DataExchangeSimulation {
 
         // Simulate data exchange using character streams
         simulateCharacterStreamExample(message);
+
+        // Simulate data exchange between a station and the energy system over a framed NIO channel
+        simulateChannelExample(message);
     }
 
     public String simulateByteStreamExample(String message) {
         String fileName = "byteDataStreamExample.txt";
 
         // Writing to a file using byte stream (FileOutputStream)
-        try (OutputStream outputStream = new FileOutputStream(fileName)) {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(fileName))) {
             byte[] data = message.getBytes(); // Convert the string to bytes
             outputStream.write(data);
             System.out.println("Data written to file using byte stream.");
@@ -32,9 +39,14 @@ public class DataExchangeSimulation {
 
         // Reading from a file using byte stream (FileInputStream)
         try (InputStream inputStream = new FileInputStream(fileName)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead = inputStream.read(buffer);
-            String readMessage = new String(buffer, 0, bytesRead);
+            // Read until the end of the file, so longer messages are not cut off and an empty file reads as ""
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                data.write(buffer, 0, bytesRead);
+            }
+            String readMessage = data.toString();
             System.out.println("Data read from file using byte stream: " + readMessage);
             return readMessage;
         } catch (IOException e) {
@@ -47,7 +59,7 @@ public class DataExchangeSimulation {
         String fileName = "characterDataStreamExample.txt";
 
         // Writing to a file using character stream (FileWriter)
-        try (Writer writer = new FileWriter(fileName)) {
+        try (Writer writer = new BufferedWriter(new FileWriter(fileName))) {
             writer.write(message);
             System.out.println("Data written to file using character stream.");
         } catch (IOException e) {
@@ -57,9 +69,13 @@ public class DataExchangeSimulation {
 
         // Reading from a file using character stream (FileReader)
         try (Reader reader = new FileReader(fileName)) {
-            char[] buffer = new char[1024];
-            int charsRead = reader.read(buffer);
-            String readMessage = new String(buffer, 0, charsRead);
+            StringBuilder data = new StringBuilder();
+            char[] buffer = new char[8192];
+            int charsRead;
+            while ((charsRead = reader.read(buffer)) != -1) {
+                data.append(buffer, 0, charsRead);
+            }
+            String readMessage = data.toString();
             System.out.println("Data read from file using character stream: " + readMessage);
             return readMessage;
         } catch (IOException e) {
@@ -67,4 +83,24 @@ public class DataExchangeSimulation {
             return "Error reading data using character stream.";
         }
     }
+
+    public String simulateChannelExample(String message) {
+        String fileName = "channelDataExchangeExample.bin";
+
+        // The station sends the message as one frame and the energy system receives it
+        try (DataExchangeChannel channel = new DataExchangeChannel(fileName, true)) {
+            channel.send(message.getBytes(StandardCharsets.UTF_8));
+            System.out.println("Data sent over data exchange channel.");
+
+            ByteBuffer frame = channel.receive();
+            String readMessage = frame == null ? "" : StandardCharsets.UTF_8.decode(frame).toString();
+            System.out.println("Data received over data exchange channel: " + readMessage);
+            System.out.printf("Channel throughput: %.0f bytes/s sent, %.0f bytes/s received%n",
+                    channel.getSendBytesPerSecond(), channel.getReceiveBytesPerSecond());
+            return readMessage;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Error exchanging data over channel.";
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/**
+ * EnergyAllocator class assigns energy sources to bookings within the capacity each source can deliver per timeslot.
+ * Capacities come from availability forecasts and are kept, together with what is already allocated,
+ * in flat int arrays of watt-hours indexed by source * slots + slot, so "can this slot take another
+ * 50 kWh of solar" is a single subtraction. When the preferred source is full, a booking goes to the
+ * source with the largest share of its capacity left, which spreads the load across sources.
+ * reoptimize() reassigns a whole day of bookings from scratch using only primitive arrays.
+ *
+ */
+
+import java.util.Arrays;
+
+class EnergyAllocator {
+    // Largest single demand reoptimize() can sort by (about 16.7 MWh)
+    private static final int MAX_DEMAND_WH = (1 << 24) - 1;
+
+    private final String[] sources;
+    private final int slots;
+    private final int[] capacityWh;
+    private final int[] allocatedWh;
+
+    public EnergyAllocator(String[] sources, int slots) {
+        this.sources = sources.clone();
+        this.slots = slots;
+        this.capacityWh = new int[sources.length * slots];
+        this.allocatedWh = new int[sources.length * slots];
+    }
+
+    public int getSourceCount() {
+        return sources.length;
+    }
+
+    public String getSourceName(int source) {
+        return sources[source];
+    }
+
+    /**
+     * Returns the index of the named source, or -1 if there is none.
+     */
+    public int indexOf(String sourceName) {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].equalsIgnoreCase(sourceName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the forecast capacity of one source for every slot of the day, in Wh.
+     */
+    public synchronized void setForecast(int source, int[] whPerSlot) {
+        System.arraycopy(whPerSlot, 0, capacityWh, source * slots, Math.min(slots, whPerSlot.length));
+    }
+
+    public synchronized void setForecast(int source, int slot, int wh) {
+        capacityWh[source * slots + slot] = wh;
+    }
+
+    public synchronized boolean canTake(int slot, int source, int wh) {
+        int i = source * slots + slot;
+        return capacityWh[i] - allocatedWh[i] >= wh;
+    }
+
+    public synchronized int remainingWh(int slot, int source) {
+        int i = source * slots + slot;
+        return capacityWh[i] - allocatedWh[i];
+    }
+
+    /**
+     * Allocates wh in the slot, from the preferred source if it has room, otherwise from the least loaded
+     * source that does. Returns the source used, or -1 if no source can supply it. Pass -1 for no preference.
+     */
+    public synchronized int allocate(int slot, int preferredSource, int wh) {
+        int source = preferredSource >= 0 && canTakeUnlocked(slot, preferredSource, wh) ? preferredSource : leastLoaded(slot, wh);
+        if (source >= 0) {
+            allocatedWh[source * slots + slot] += wh;
+        }
+        return source;
+    }
+
+    public synchronized void release(int slot, int source, int wh) {
+        int i = source * slots + slot;
+        allocatedWh[i] = Math.max(0, allocatedWh[i] - wh);
+    }
+
+    public synchronized void clearAllocations() {
+        Arrays.fill(allocatedWh, 0);
+    }
+
+    /**
+     * Throws away the current allocation and assigns all given bookings again, largest demand first within
+     * each slot. assignment[i] receives the source for booking i, or -1 if it could not be supplied;
+     * preferred may be null or hold -1 for bookings without a preference.
+     * Returns the number of bookings left unassigned.
+     */
+    public synchronized int reoptimize(int[] bookingSlots, int[] demandWh, int[] preferred, int[] assignment) {
+        int count = bookingSlots.length;
+        if (count >= 1 << 24) {
+            throw new IllegalArgumentException("Too many bookings to reoptimize at once: " + count);
+        }
+        Arrays.fill(allocatedWh, 0);
+
+        // Sort key: slot, then demand descending, then booking index, packed into one long
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            int demand = Math.min(demandWh[i], MAX_DEMAND_WH);
+            order[i] = ((long) bookingSlots[i] << 48) | ((long) (MAX_DEMAND_WH - demand) << 24) | i;
+        }
+        Arrays.sort(order);
+
+        int unassigned = 0;
+        for (long key : order) {
+            int i = (int) (key & 0xffffff);
+            int want = preferred == null ? -1 : preferred[i];
+            int source = allocate(bookingSlots[i], want, demandWh[i]);
+            assignment[i] = source;
+            if (source < 0) {
+                unassigned++;
+            }
+        }
+        return unassigned;
+    }
+
+    private boolean canTakeUnlocked(int slot, int source, int wh) {
+        int i = source * slots + slot;
+        return capacityWh[i] - allocatedWh[i] >= wh;
+    }
+
+    private int leastLoaded(int slot, int wh) {
+        int best = -1;
+        double bestShare = -1;
+        for (int source = 0; source < sources.length; source++) {
+            int i = source * slots + slot;
+            int remaining = capacityWh[i] - allocatedWh[i];
+            if (remaining < wh || capacityWh[i] == 0) {
+                continue;
+            }
+            double share = (double) remaining / capacityWh[i];
+            if (share > bestShare) {
+                bestShare = share;
+                best = source;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * EnergySelectionEvent class records which energy sources were selected for a timeslot at a station.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+class EnergySelectionEvent extends LogEvent {
+    final String stationId;
+    final int slot;
+    final String[] sources;
+
+    public EnergySelectionEvent(long timestampMillis, String stationId, int slot, String... sources) {
+        super(timestampMillis);
+        this.stationId = stationId;
+        this.slot = slot;
+        this.sources = sources;
+    }
+
+    public static EnergySelectionEvent selected(String stationId, int slot, List<String> sources) {
+        return new EnergySelectionEvent(System.currentTimeMillis(), stationId, slot, sources.toArray(new String[0]));
+    }
+
+    public List<String> getSources() {
+        return Arrays.asList(sources);
+    }
+
+    @Override
+    byte type() {
+        return ENERGY_SELECTION;
+    }
+
+    @Override
+    public String toString() {
+        return "Timeslot " + slot + " at " + stationId + " - Selected Energy Sources: " + String.join(",", sources);
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * EventBus class passes LogEvents from the stations to any number of consumers through a ring buffer,
+ * in the style of the LMAX Disruptor. Publishing claims the next sequence with one compare-and-set,
+ * stores the event in its slot and marks the slot published; it never takes a lock or waits, and when the
+ * slowest consumer is a whole ring behind publish returns false instead of stalling the booking, and the
+ * publisher handles the event itself (see ChargingStation).
+ * Every consumer has its own thread and its own sequence and sees every event in order. It takes all events
+ * published so far as one batch, so a slow consumer catches up in larger batches (endOfBatch marks the last
+ * event of a batch, e.g. to save once per batch). Idle consumers wait with the configured WaitStrategy.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+class EventBus {
+
+    enum WaitStrategy {
+        // Spin on the CPU: lowest latency, but every idle consumer keeps a core busy
+        BUSY_SPIN,
+        // Spin briefly, then yield the CPU to other threads between checks
+        YIELDING,
+        // Spin, then yield, then sleep 100 us between checks: little CPU when idle
+        SLEEPING,
+        // Sleep until a publisher signals; publishers only take the lock when a consumer is waiting
+        BLOCKING
+    }
+
+    /**
+     * Receives the events on the consumer's thread, in sequence order.
+     */
+    interface EventHandler {
+        void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception;
+    }
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    private static final LongAdder published = Metrics.counter("events.published");
+    private static final LongAdder dropped = Metrics.counter("events.dropped");
+
+    private final String name;
+    private final int mask;
+    private final AtomicReferenceArray<LogEvent> entries;
+    // Sequence of the event held by each slot once it is published, so consumers never read a half-written slot
+    private final AtomicLongArray publishedSequences;
+    // Highest sequence claimed by a publisher
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // Lowest consumer sequence seen by a publisher; refreshed only when the ring looks full
+    private volatile long gatingSequence = -1;
+    private final WaitStrategy waitStrategy;
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition eventsPublished = lock.newCondition();
+    private final AtomicLong waitingConsumers = new AtomicLong();
+    // Publishers between their running check and marking their slot published; close() waits for them
+    private final AtomicLong activePublishers = new AtomicLong();
+    private volatile boolean running;
+
+    public EventBus(String name, int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        this.name = name;
+        this.mask = capacity - 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedSequences.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Adds a consumer. Consumers must all be added before start().
+     */
+    public synchronized EventBus subscribe(String consumerName, EventHandler handler) {
+        if (running) {
+            throw new IllegalStateException("Consumers must be added before the event bus is started.");
+        }
+        consumers.add(new Consumer(consumerName, handler));
+        return this;
+    }
+
+    public synchronized EventBus start() {
+        if (!running) {
+            running = true;
+            for (Consumer consumer : consumers) {
+                consumer.thread.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Publishes an event to every consumer. Never blocks; returns false, and counts the event as dropped,
+     * if the bus is not running or the slowest consumer has not made room in the ring yet.
+     * An event for which this returns true is handled by every consumer, even if close() runs at the same time.
+     */
+    public boolean publish(LogEvent event) {
+        // Counted before running is read, so close() either sees this publisher or stops it here
+        activePublishers.incrementAndGet();
+        try {
+            if (!running) {
+                dropped.increment();
+                return false;
+            }
+            return claimAndPublish(event);
+        } finally {
+            activePublishers.decrementAndGet();
+        }
+    }
+
+    private boolean claimAndPublish(LogEvent event) {
+        long sequence;
+        do {
+            long current = claimed.get();
+            sequence = current + 1;
+            if (sequence - entries.length() > gatingSequence) {
+                // The ring looks full; look at the consumers again before giving up
+                gatingSequence = minimumConsumerSequence();
+                if (sequence - entries.length() > gatingSequence) {
+                    dropped.increment();
+                    return false;
+                }
+            }
+            if (claimed.compareAndSet(current, sequence)) {
+                break;
+            }
+        } while (true);
+
+        int index = (int) sequence & mask;
+        entries.lazySet(index, event);
+        publishedSequences.set(index, sequence);
+        published.increment();
+        if (waitStrategy == WaitStrategy.BLOCKING && waitingConsumers.get() > 0) {
+            lock.lock();
+            try {
+                eventsPublished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until every consumer has handled every event published before this call.
+     */
+    public void flush() {
+        long target = claimed.get();
+        for (Consumer consumer : consumers) {
+            while (consumer.sequence.get() < target && consumer.thread.isAlive()) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+    }
+
+    /**
+     * Stops accepting events, lets every consumer handle what was already published and stops the consumer threads.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        // A publisher that saw running before it was cleared may still be claiming a slot; flush() must include it
+        while (activePublishers.get() > 0) {
+            Thread.yield();
+        }
+        flush();
+        for (Consumer consumer : consumers) {
+            consumer.stopped = true;
+            consumer.thread.interrupt();
+        }
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns how many published events the slowest consumer has not handled yet.
+     */
+    public long getBacklog() {
+        return claimed.get() - minimumConsumerSequence();
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    private long minimumConsumerSequence() {
+        long minimum = claimed.get();
+        for (Consumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private final class Consumer {
+        final String name;
+        final EventHandler handler;
+        // Last sequence this consumer has handled; its slot may be reused once every consumer is past it
+        final AtomicLong sequence = new AtomicLong(-1);
+        final Thread thread;
+        final LatencyHistogram batchLatency;
+        volatile boolean stopped;
+
+        Consumer(String consumerName, EventHandler handler) {
+            this.name = consumerName;
+            this.handler = handler;
+            this.batchLatency = Metrics.histogram("events." + consumerName + ".batch");
+            this.thread = new Thread(this::consume, "event-bus-" + EventBus.this.name + "-" + consumerName);
+            this.thread.setDaemon(true);
+        }
+
+        private void consume() {
+            long next = sequence.get() + 1;
+            int idle = 0;
+            while (!stopped) {
+                // The batch is every event published in a row from next on
+                long last = next - 1;
+                while (publishedSequences.get((int) (last + 1) & mask) == last + 1) {
+                    last++;
+                }
+                if (last < next) {
+                    idle = waitForEvents(idle);
+                    continue;
+                }
+                idle = 0;
+                long start = System.nanoTime();
+                for (long s = next; s <= last; s++) {
+                    LogEvent event = entries.get((int) s & mask);
+                    try {
+                        handler.onEvent(event, s, s == last);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        System.err.println("Error handling event in " + name + ": " + e.getMessage());
+                    }
+                }
+                batchLatency.recordSince(start);
+                sequence.set(last);
+                next = last + 1;
+            }
+        }
+
+        private int waitForEvents(int idle) {
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case YIELDING:
+                    if (idle < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                    break;
+                case SLEEPING:
+                    if (idle < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                    }
+                    break;
+                case BLOCKING:
+                default:
+                    waitingConsumers.incrementAndGet();
+                    lock.lock();
+                    try {
+                        // Checked again under the lock; the timeout covers a publish between the check and the await
+                        long next = sequence.get() + 1;
+                        if (publishedSequences.get((int) next & mask) != next && !stopped) {
+                            eventsPublished.await(1, TimeUnit.MILLISECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        // close() interrupts to stop the consumer; the loop checks stopped
+                    } finally {
+                        lock.unlock();
+                        waitingConsumers.decrementAndGet();
+                    }
+                    break;
+            }
+            return idle + 1;
+        }
+    }
+}
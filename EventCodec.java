@@ -0,0 +1,410 @@
+/**
+ * EventCodec class encodes LogEvents in a compact binary form and, optionally, as JSON lines.
+ * A binary record is [int length][byte type][long timestamp][fields], with strings stored as
+ * [unsigned short length][UTF-8 bytes]. Decoding reads straight from a ByteBuffer, e.g. a mapped
+ * event log, and keeps a small table of the strings it has seen, so repeated station ids, usernames
+ * and energy source names are not allocated again for every record.
+ * A codec instance is not thread-safe; use one per reading or writing thread.
+ *
+ */
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class EventCodec {
+    private static final int STRING_TABLE_SIZE = 1024;
+    // Longer strings (e.g. free-text messages) are decoded without going through the table
+    private static final int MAX_TABLED_LENGTH = 64;
+
+    private final byte[][] tableBytes = new byte[STRING_TABLE_SIZE][];
+    private final String[] tableStrings = new String[STRING_TABLE_SIZE];
+
+    /**
+     * Appends the binary record of the event to the buffer.
+     * Throws BufferOverflowException if the buffer is too small; the buffer position is then undefined.
+     */
+    public void encode(LogEvent event, ByteBuffer out) {
+        int start = out.position();
+        out.putInt(0); // length, patched below
+        out.put(event.type());
+        out.putLong(event.timestampMillis);
+        if (event instanceof BookingEvent) {
+            BookingEvent booking = (BookingEvent) event;
+            putString(out, booking.stationId);
+            putString(out, booking.username);
+            out.put((byte) (booking.isAdmin ? 1 : 0));
+            out.putInt(booking.slot);
+            out.putInt(booking.previousSlot);
+            out.put((byte) booking.action.ordinal());
+        } else if (event instanceof EnergySelectionEvent) {
+            EnergySelectionEvent selection = (EnergySelectionEvent) event;
+            putString(out, selection.stationId);
+            out.putInt(selection.slot);
+            out.put((byte) selection.sources.length);
+            for (String source : selection.sources) {
+                putString(out, source);
+            }
+        } else if (event instanceof SystemEvent) {
+            putString(out, ((SystemEvent) event).message);
+        } else {
+            throw new IllegalArgumentException("Unknown event " + event.getClass().getName());
+        }
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    /**
+     * Reads the next binary record from the buffer, or returns null (leaving the position unchanged)
+     * if the buffer ends before the record does.
+     */
+    public LogEvent decode(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < 4) {
+            return null;
+        }
+        int length = in.getInt();
+        if (length < 9 || in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+        int end = in.position() + length;
+        try {
+            byte type = in.get();
+            long timestamp = in.getLong();
+            LogEvent event;
+            switch (type) {
+                case LogEvent.BOOKING: {
+                    String stationId = getString(in);
+                    String username = getString(in);
+                    boolean isAdmin = in.get() != 0;
+                    int slot = in.getInt();
+                    int previousSlot = in.getInt();
+                    BookingEvent.Action action = BookingEvent.Action.values()[in.get()];
+                    event = new BookingEvent(timestamp, stationId, username, isAdmin, slot, previousSlot, action);
+                    break;
+                }
+                case LogEvent.ENERGY_SELECTION: {
+                    String stationId = getString(in);
+                    int slot = in.getInt();
+                    String[] sources = new String[in.get() & 0xff];
+                    for (int i = 0; i < sources.length; i++) {
+                        sources[i] = getString(in);
+                    }
+                    event = new EnergySelectionEvent(timestamp, stationId, slot, sources);
+                    break;
+                }
+                case LogEvent.SYSTEM:
+                    event = new SystemEvent(timestamp, getString(in));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown event type " + type + " at offset " + start);
+            }
+            return event;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Damaged event record at offset " + start, e);
+        } finally {
+            // Skip any fields added by a newer writer
+            in.position(end);
+        }
+    }
+
+    /**
+     * Appends the event as one JSON object, without a line separator.
+     */
+    public void encodeJson(LogEvent event, StringBuilder out) {
+        out.append('{');
+        if (event instanceof BookingEvent) {
+            BookingEvent booking = (BookingEvent) event;
+            out.append("\"type\":\"booking\",\"ts\":").append(event.timestampMillis);
+            out.append(",\"station\":");
+            appendJsonString(out, booking.stationId);
+            out.append(",\"user\":");
+            appendJsonString(out, booking.username);
+            out.append(",\"admin\":").append(booking.isAdmin);
+            out.append(",\"slot\":").append(booking.slot);
+            out.append(",\"previousSlot\":").append(booking.previousSlot);
+            out.append(",\"action\":\"").append(booking.action.name()).append('"');
+        } else if (event instanceof EnergySelectionEvent) {
+            EnergySelectionEvent selection = (EnergySelectionEvent) event;
+            out.append("\"type\":\"energy\",\"ts\":").append(event.timestampMillis);
+            out.append(",\"station\":");
+            appendJsonString(out, selection.stationId);
+            out.append(",\"slot\":").append(selection.slot);
+            out.append(",\"sources\":[");
+            for (int i = 0; i < selection.sources.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendJsonString(out, selection.sources[i]);
+            }
+            out.append(']');
+        } else if (event instanceof SystemEvent) {
+            out.append("\"type\":\"system\",\"ts\":").append(event.timestampMillis);
+            out.append(",\"message\":");
+            appendJsonString(out, ((SystemEvent) event).message);
+        } else {
+            throw new IllegalArgumentException("Unknown event " + event.getClass().getName());
+        }
+        out.append('}');
+    }
+
+    /**
+     * Parses one line written by encodeJson.
+     */
+    public LogEvent decodeJson(String line) {
+        JsonFields fields = new JsonFields(line);
+        String type = fields.string("type");
+        long timestamp = fields.number("ts");
+        if ("booking".equals(type)) {
+            return new BookingEvent(timestamp, fields.string("station"), fields.string("user"),
+                    fields.bool("admin"), (int) fields.number("slot"), (int) fields.number("previousSlot"),
+                    BookingEvent.Action.valueOf(fields.string("action")));
+        } else if ("energy".equals(type)) {
+            return new EnergySelectionEvent(timestamp, fields.string("station"), (int) fields.number("slot"), fields.strings("sources"));
+        } else if ("system".equals(type)) {
+            return new SystemEvent(timestamp, fields.string("message"));
+        }
+        throw new IllegalArgumentException("Unknown event type " + type);
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("String longer than 65535 bytes cannot be encoded.");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        int position = in.position();
+        if (length > MAX_TABLED_LENGTH) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + in.get(position + i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (STRING_TABLE_SIZE - 1);
+        byte[] cached = tableBytes[slot];
+        if (cached != null && cached.length == length && sameBytes(in, position, cached)) {
+            in.position(position + length);
+            return tableStrings[slot];
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        tableBytes[slot] = bytes;
+        tableStrings[slot] = value;
+        return value;
+    }
+
+    private static boolean sameBytes(ByteBuffer in, int position, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (in.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Minimal reader for the flat JSON objects written by encodeJson: string, number, boolean
+     * and string-array values only. LoadGenerator reads its request lines with it too.
+     */
+    static final class JsonFields {
+        private final List<String> names = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private final String text;
+        private int position;
+
+        JsonFields(String text) {
+            this.text = text;
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                return;
+            }
+            while (true) {
+                skipWhitespace();
+                names.add(readString());
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                values.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                    continue;
+                }
+                expect('}');
+                return;
+            }
+        }
+
+        String string(String name) {
+            Object value = get(name);
+            return value == null ? null : value.toString();
+        }
+
+        long number(String name) {
+            Object value = get(name);
+            return value instanceof Long ? (Long) value : -1;
+        }
+
+        boolean bool(String name) {
+            return Boolean.TRUE.equals(get(name));
+        }
+
+        String[] strings(String name) {
+            Object value = get(name);
+            return value instanceof String[] ? (String[]) value : new String[0];
+        }
+
+        private Object get(String name) {
+            int index = names.indexOf(name);
+            return index < 0 ? null : values.get(index);
+        }
+
+        private Object readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '[') {
+                position++;
+                List<String> items = new ArrayList<>();
+                skipWhitespace();
+                if (peek() == ']') {
+                    position++;
+                    return new String[0];
+                }
+                while (true) {
+                    skipWhitespace();
+                    items.add(readString());
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        position++;
+                        continue;
+                    }
+                    expect(']');
+                    return items.toArray(new String[0]);
+                }
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            int start = position;
+            if (c == '-') {
+                position++;
+            }
+            while (position < text.length() && Character.isDigit(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at " + position + " in " + text);
+            }
+            return Long.parseLong(text.substring(start, position));
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON line: " + text);
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + (position - 1) + " in " + text);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * LatencyHistogram class records durations in nanoseconds into log-linear buckets, in the style of HdrHistogram:
+ * every power of two is split into 16 equal sub-buckets, so any recorded value is off by at most 1/16
+ * (about 6%) while the whole range from 1 ns to hours fits in about a thousand counters.
+ * Recording is one bucket increment and needs no locks, so many threads can record at once;
+ * snapshots read the counters without stopping the recorders.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS have their own bucket; above that, SUB_BUCKETS per power of two up to 2^63
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(bucketOf(nanos));
+        total.add(nanos);
+        // Reading first keeps the common case, a value below the maximum, free of writes
+        if (nanos > max.get()) {
+            max.accumulate(nanos);
+        }
+    }
+
+    /**
+     * Records the time since a start value taken from System.nanoTime().
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(name, copy, count, total.sum(), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value that falls into the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * A point-in-time copy of a histogram.
+     */
+    static final class Snapshot {
+        final String name;
+        final long count;
+        final long totalNanos;
+        final long maxNanos;
+        private final long[] counts;
+
+        Snapshot(String name, long[] counts, long count, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /**
+         * Returns the value at the given fraction (e.g. 0.99), as the upper bound of its bucket
+         * but never above the largest value recorded.
+         */
+        public long percentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                    count, meanNanos() / 1e3, percentile(0.50) / 1e3, percentile(0.90) / 1e3,
+                    percentile(0.99) / 1e3, percentile(0.999) / 1e3, maxNanos / 1e3);
+        }
+    }
+}
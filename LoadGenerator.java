@@ -0,0 +1,166 @@
+/**
+ * LoadGenerator class replays a JSONL file of booking requests against a running BookingServer
+ * with many concurrent clients and reports throughput, latency percentiles and response codes.
+ * One request per line, e.g.
+ *   {"op":"book","station":"Station1","user":"Alice","admin":false,"slot":930}
+ * where op is slots, book, cancel, energy (with "source") or queue.
+ * Run with: LoadGenerator [file] [baseUrl] [concurrency]. If the file does not exist, a synthetic
+ * mix of 20000 requests over Station1-Station4 is written to it first.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class LoadGenerator {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String file = args.length > 0 ? args[0] : "load_requests.jsonl";
+        String baseUrl = args.length > 1 ? args[1] : "http://localhost:8080";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        if (!new File(file).exists()) {
+            writeSyntheticRequests(file, 20_000, 4);
+            System.out.println("Wrote synthetic requests to " + file);
+        }
+        List<String> lines = Files.readAllLines(new File(file).toPath(), StandardCharsets.UTF_8);
+        new LoadGenerator().replay(lines, baseUrl, concurrency);
+    }
+
+    /**
+     * Sends every request line with at most concurrency requests in flight and prints a summary.
+     */
+    public void replay(List<String> lines, String baseUrl, int concurrency) throws InterruptedException {
+        ExecutorService executor = BookingServer.newRequestExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(lines.size());
+        long[] latencies = new long[lines.size()];
+        // Responses counted by status class: index 1 for 1xx ... 5, and 0 for requests that failed outright
+        AtomicIntegerArray statuses = new AtomicIntegerArray(6);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < lines.size(); i++) {
+            int index = i;
+            inFlight.acquire();
+            executor.execute(() -> {
+                long sent = System.nanoTime();
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(toUri(baseUrl, lines.get(index)))
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    statuses.incrementAndGet(Math.min(5, response.statusCode() / 100));
+                } catch (IOException | IllegalArgumentException e) {
+                    statuses.incrementAndGet(0);
+                } catch (InterruptedException e) {
+                    statuses.incrementAndGet(0);
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latencies[index] = System.nanoTime() - sent;
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests in %.2f s (%.0f req/s), concurrency %d%n",
+                lines.size(), elapsed / 1e9, lines.size() / (elapsed / 1e9), concurrency);
+        System.out.printf("latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, percentile(latencies, 1.0) / 1e6);
+        System.out.printf("2xx %d, 4xx %d, 5xx %d, failed %d%n",
+                statuses.get(2), statuses.get(4), statuses.get(5), statuses.get(0));
+    }
+
+    /**
+     * Turns one request line into the server URL, e.g. http://localhost:8080/book?station=Station1&user=Alice&slot=930.
+     */
+    static URI toUri(String baseUrl, String line) {
+        EventCodec.JsonFields fields = new EventCodec.JsonFields(line);
+        String op = fields.string("op");
+        if (op == null) {
+            throw new IllegalArgumentException("Request line without op: " + line);
+        }
+        StringBuilder url = new StringBuilder(baseUrl).append('/').append(op);
+        url.append("?station=").append(encode(fields.string("station") == null ? "Station1" : fields.string("station")));
+        if (fields.string("user") != null) {
+            url.append("&user=").append(encode(fields.string("user")));
+            url.append("&admin=").append(fields.bool("admin"));
+        }
+        if (fields.number("slot") >= 0) {
+            url.append("&slot=").append(fields.number("slot"));
+        }
+        if (fields.number("source") >= 0) {
+            url.append("&source=").append(fields.number("source"));
+        }
+        return URI.create(url.toString());
+    }
+
+    /**
+     * Writes a mix of requests: mostly bookings and availability checks, with some cancels,
+     * energy selections and queue checks.
+     */
+    static void writeSyntheticRequests(String file, int count, int stations) throws IOException {
+        Random random = new Random(42);
+        int[] slots = new TimeslotCalendar(1, 1).slotTimes();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < count; i++) {
+                String station = "Station" + (1 + random.nextInt(stations));
+                String user = "User" + random.nextInt(count / 4 + 1);
+                int slot = slots[random.nextInt(slots.length)];
+                int kind = random.nextInt(100);
+                String line;
+                if (kind < 40) {
+                    line = "{\"op\":\"book\",\"station\":\"" + station + "\",\"user\":\"" + user + "\",\"admin\":" + (kind < 2) + ",\"slot\":" + slot + "}";
+                } else if (kind < 75) {
+                    line = "{\"op\":\"slots\",\"station\":\"" + station + "\"}";
+                } else if (kind < 85) {
+                    line = "{\"op\":\"cancel\",\"station\":\"" + station + "\",\"user\":\"" + user + "\",\"slot\":" + slot + "}";
+                } else if (kind < 95) {
+                    line = "{\"op\":\"energy\",\"station\":\"" + station + "\",\"slot\":" + slot + ",\"source\":" + (1 + random.nextInt(3)) + "}";
+                } else {
+                    line = "{\"op\":\"queue\",\"station\":\"" + station + "\"}";
+                }
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,593 @@
+/**
+ * LogAnalytics class computes daily reports from the station and energy logs, including every archived segment:
+ * bookings per hour of the booked slot, the energy source mix per timeslot, and bookings per user.
+ * Bookings are net of the day's cancellations, and a rebooking moves a booking from the old slot's hour to the new one's.
+ * Each segment is scanned on the common fork-join pool: live logs are memory-mapped and split into chunks
+ * at line boundaries, and the archived segments are processed side by side. Every chunk counts into
+ * primitive arrays (users and sources by small indexes of their own), and the partial results are merged.
+ * The partial result of every segment is cached, in memory and in a cache file, keyed by its size and
+ * modification time; archived segments are never scanned twice, and a live log is only read from where
+ * the last run stopped.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+class LogAnalytics {
+    static final String DEFAULT_CACHE_FILE = "log_analytics.cache";
+
+    private static final int CACHE_MAGIC = 0x4c414332; // "LAC2"
+    private static final int HEAD_BYTES = 64;
+    private static final int MAX_SOURCES = 16;
+    private static final String BOOKED = " booked timeslot ";
+    private static final String CANCELED = " canceled timeslot ";
+    private static final String REBOOKED = " rebooked timeslot ";
+    private static final String INSTEAD_OF = " instead of ";
+    private static final String ENERGY_PREFIX = "Timeslot ";
+    private static final String ENERGY_SOURCES = " - Selected Energy Sources: ";
+
+    // Energy source names by index, shared by every report so cached partials stay comparable
+    private static final Map<String, Integer> sourceIndexes = new ConcurrentHashMap<>();
+    private static final String[] sourceNames = new String[MAX_SOURCES];
+    private static final AtomicInteger sourceCount = new AtomicInteger();
+    // Usernames by index; kept here rather than in the UserRegistry, so reading logs adds no users to the stations
+    private static final Map<String, Integer> userIndexes = new ConcurrentHashMap<>();
+    private static final List<String> userNames = new ArrayList<>();
+    // Timeslots of the station day, to turn 930 into a slot index
+    private static final TimeslotCalendar calendar = new TimeslotCalendar(1, 1);
+
+    private final List<String> logFiles;
+    private final String cacheFile;
+    private final Map<String, Partial> cache = new HashMap<>();
+    private boolean cacheLoaded;
+    private int segmentsScanned;
+    private long bytesScanned;
+
+    public LogAnalytics(String cacheFile, String... logFiles) {
+        this.cacheFile = cacheFile;
+        this.logFiles = Arrays.asList(logFiles);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String day = args.length > 0 ? args[0] : null;
+        LogAnalytics analytics = new LogAnalytics(DEFAULT_CACHE_FILE, LogManager.stationLog, LogManager.energyLog);
+        LogManager.flushLog(LogManager.stationLog);
+        LogManager.flushLog(LogManager.energyLog);
+        long start = System.nanoTime();
+        Report report = analytics.report(day);
+        System.out.print(report);
+        System.out.printf("Scanned %d segments (%d bytes) in %.1f ms%n",
+                analytics.getSegmentsScanned(), analytics.getBytesScanned(), (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Builds the report for one day ("yyyy-MM-dd"), or for all days when day is null.
+     * Only segments that are new or have grown since the last report are scanned.
+     */
+    public synchronized Report report(String day) throws IOException {
+        if (!cacheLoaded) {
+            loadCache();
+            cacheLoaded = true;
+        }
+        List<File> files = new ArrayList<>();
+        for (String logFile : logFiles) {
+            files.addAll(LogRotator.segments(logFile));
+            File live = new File(logFile);
+            if (live.exists()) {
+                files.add(live);
+            }
+        }
+
+        segmentsScanned = 0;
+        bytesScanned = 0;
+        List<Partial> partials;
+        try {
+            partials = files.parallelStream().map(this::refresh).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<String, Partial> current = new HashMap<>();
+        for (Partial partial : partials) {
+            current.put(partial.path, partial);
+            if (partial.scannedBytes > 0) {
+                segmentsScanned++;
+                bytesScanned += partial.scannedBytes;
+            }
+        }
+        // Segments removed by retention are dropped from the cache
+        cache.clear();
+        cache.putAll(current);
+        saveCache();
+
+        Report report = new Report(day);
+        for (Partial partial : partials) {
+            partial.days.forEach((date, counts) -> {
+                if (day == null || day.equals(date)) {
+                    report.counts.merge(counts);
+                }
+            });
+        }
+        return report;
+    }
+
+    /**
+     * Returns how many segments the last report had to scan; 0 means everything came from the cache.
+     */
+    public synchronized int getSegmentsScanned() {
+        return segmentsScanned;
+    }
+
+    public synchronized long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    private Partial refresh(File file) {
+        try {
+            String path = file.getPath();
+            long length = file.length();
+            long modified = file.lastModified();
+            boolean compressed = path.endsWith(".gz");
+            Partial cached = cache.get(path);
+            if (cached != null && cached.length == length && cached.modified == modified) {
+                return cached.unchanged();
+            }
+            long headCrc = compressed ? 0 : headCrc(file);
+            if (cached != null && !compressed && length > cached.length && cached.headCrc == headCrc) {
+                // The log has only grown: count the new lines and add them to what was counted before
+                Partial grown = scan(file, cached.length, length);
+                grown.merge(cached);
+                return grown.describe(path, length, modified, headCrc, length - cached.length);
+            }
+            Partial scanned = scan(file, 0, length);
+            return scanned.describe(path, length, modified, headCrc, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Partial scan(File file, long fromOffset, long toOffset) throws IOException {
+        if (file.getName().endsWith(".gz")) {
+            try (Stream<String> lines = LogRotator.lines(file)) {
+                return lines.collect(collector());
+            }
+        }
+        try (MappedLogReader reader = new MappedLogReader(file.toPath())) {
+            // Lines appended after toOffset are left for the next report
+            return reader.stream(fromOffset, true)
+                    .filter(record -> record.getOffset() < toOffset)
+                    .map(LogRecord::line)
+                    .collect(collector());
+        }
+    }
+
+    private static Collector<String, Partial, Partial> collector() {
+        return Collector.of(Partial::new, Partial::add, Partial::merge);
+    }
+
+    private static long headCrc(File file) throws IOException {
+        byte[] head = new byte[(int) Math.min(HEAD_BYTES, file.length())];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(head);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        return crc.getValue();
+    }
+
+    static int sourceIndex(String name) {
+        Integer index = sourceIndexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        synchronized (sourceIndexes) {
+            index = sourceIndexes.get(name);
+            if (index == null) {
+                int next = sourceCount.get();
+                if (next == MAX_SOURCES) {
+                    return -1;
+                }
+                sourceNames[next] = name;
+                sourceCount.set(next + 1);
+                index = next;
+                sourceIndexes.put(name, index);
+            }
+            return index;
+        }
+    }
+
+    static int userIndex(String name) {
+        Integer index = userIndexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        synchronized (userIndexes) {
+            index = userIndexes.get(name);
+            if (index == null) {
+                index = userNames.size();
+                userNames.add(name);
+                userIndexes.put(name, index);
+            }
+            return index;
+        }
+    }
+
+    static String userName(int index) {
+        synchronized (userIndexes) {
+            return userNames.get(index);
+        }
+    }
+
+    /**
+     * Counters for one day of log lines, all primitive arrays.
+     */
+    static final class Counts {
+        final long[] bookingsPerHour = new long[24];
+        // (slot index * MAX_SOURCES + source index) -> selections
+        final long[] energyMix = new long[calendar.getSlotsPerDay() * MAX_SOURCES];
+        // User index -> bookings
+        long[] bookingsPerUser = new long[16];
+        long cancellations;
+        long rebookings;
+
+        /**
+         * Adds delta bookings (1 for a booking, -1 for a cancellation) to the hour and the user.
+         */
+        void addBooking(int hour, int user, int delta) {
+            addHour(hour, delta);
+            if (user >= bookingsPerUser.length) {
+                bookingsPerUser = Arrays.copyOf(bookingsPerUser, Math.max(bookingsPerUser.length * 2, user + 1));
+            }
+            bookingsPerUser[user] += delta;
+        }
+
+        void addHour(int hour, int delta) {
+            if (hour >= 0 && hour < 24) {
+                bookingsPerHour[hour] += delta;
+            }
+        }
+
+        void merge(Counts other) {
+            cancellations += other.cancellations;
+            rebookings += other.rebookings;
+            for (int i = 0; i < 24; i++) {
+                bookingsPerHour[i] += other.bookingsPerHour[i];
+            }
+            for (int i = 0; i < energyMix.length; i++) {
+                energyMix[i] += other.energyMix[i];
+            }
+            if (other.bookingsPerUser.length > bookingsPerUser.length) {
+                bookingsPerUser = Arrays.copyOf(bookingsPerUser, other.bookingsPerUser.length);
+            }
+            for (int i = 0; i < other.bookingsPerUser.length; i++) {
+                bookingsPerUser[i] += other.bookingsPerUser[i];
+            }
+        }
+    }
+
+    /**
+     * The counts of one segment by day, plus what is needed to tell whether the segment changed.
+     */
+    static final class Partial {
+        final Map<String, Counts> days = new HashMap<>();
+        String path;
+        long length;
+        long modified;
+        long headCrc;
+        // Bytes read to build this partial in the current report; 0 if it came from the cache
+        long scannedBytes;
+
+        void add(String line) {
+            int separator = line.indexOf(" : ");
+            if (separator != LogRecord.TIMESTAMP_LENGTH) {
+                return;
+            }
+            String message = line.substring(separator + 3);
+            if (message.startsWith(ENERGY_PREFIX)) {
+                addEnergy(line, message);
+                return;
+            }
+            int booked = message.indexOf(BOOKED);
+            if (booked > 0) {
+                dayOf(line).addBooking(parseHour(message, booked + BOOKED.length()), userIndex(message.substring(0, booked)), 1);
+                return;
+            }
+            int canceled = message.indexOf(CANCELED);
+            if (canceled > 0) {
+                Counts counts = dayOf(line);
+                counts.addBooking(parseHour(message, canceled + CANCELED.length()), userIndex(message.substring(0, canceled)), -1);
+                counts.cancellations++;
+                return;
+            }
+            // "<user> rebooked timeslot <new range> instead of <old range>": the user keeps one booking
+            int rebooked = message.indexOf(REBOOKED);
+            if (rebooked > 0) {
+                int from = rebooked + REBOOKED.length();
+                int instead = message.indexOf(INSTEAD_OF, from);
+                if (instead < 0) {
+                    return;
+                }
+                Counts counts = dayOf(line);
+                counts.addHour(parseHour(message, from), 1);
+                counts.addHour(parseHour(message, instead + INSTEAD_OF.length()), -1);
+                counts.rebookings++;
+            }
+        }
+
+        private void addEnergy(String line, String message) {
+            int end = message.indexOf(ENERGY_SOURCES);
+            if (end < 0) {
+                return;
+            }
+            // "Timeslot 930 - ..." or, from the event log, "Timeslot 930 at Station1 - ..."
+            int time = 0;
+            int digits = ENERGY_PREFIX.length();
+            while (digits < end && Character.isDigit(message.charAt(digits)) && time < 10_000) {
+                time = time * 10 + message.charAt(digits++) - '0';
+            }
+            int slot = digits > ENERGY_PREFIX.length() ? calendar.slotOf(time) : -1;
+            if (slot < 0) {
+                return;
+            }
+            Counts counts = dayOf(line);
+            for (String source : message.substring(end + ENERGY_SOURCES.length()).split(",")) {
+                int index = sourceIndex(source.trim());
+                if (index >= 0) {
+                    counts.energyMix[slot * MAX_SOURCES + index]++;
+                }
+            }
+        }
+
+        private Counts dayOf(String line) {
+            return days.computeIfAbsent(line.substring(0, 10), key -> new Counts());
+        }
+
+        Partial merge(Partial other) {
+            other.days.forEach((day, counts) -> days.computeIfAbsent(day, key -> new Counts()).merge(counts));
+            return this;
+        }
+
+        Partial describe(String path, long length, long modified, long headCrc, long scannedBytes) {
+            this.path = path;
+            this.length = length;
+            this.modified = modified;
+            this.headCrc = headCrc;
+            this.scannedBytes = scannedBytes;
+            return this;
+        }
+
+        Partial unchanged() {
+            scannedBytes = 0;
+            return this;
+        }
+
+        /**
+         * Returns the hour of a "HH:mm AM" time range, or -1 if there is none at the given index.
+         * Station logs write 24-hour times; a PM time before noon is moved to the afternoon.
+         */
+        private static int parseHour(String text, int at) {
+            if (at + 8 > text.length() || !Character.isDigit(text.charAt(at)) || !Character.isDigit(text.charAt(at + 1))) {
+                return -1;
+            }
+            int hour = (text.charAt(at) - '0') * 10 + text.charAt(at + 1) - '0';
+            return hour < 12 && text.startsWith("PM", at + 6) ? hour + 12 : hour;
+        }
+    }
+
+    /**
+     * The merged counts of a report, with a plain-text rendering.
+     */
+    static final class Report {
+        final String day;
+        final Counts counts = new Counts();
+
+        Report(String day) {
+            this.day = day;
+        }
+
+        /**
+         * Returns the bookings of slots in the hour, net of cancellations and rebookings to other hours.
+         */
+        public long bookingsInHour(int hour) {
+            return counts.bookingsPerHour[hour];
+        }
+
+        public long getCancellations() {
+            return counts.cancellations;
+        }
+
+        public long getRebookings() {
+            return counts.rebookings;
+        }
+
+        /**
+         * Returns how often each energy source was selected for the timeslot (e.g. 930).
+         */
+        public Map<String, Long> energyMix(int timeslot) {
+            Map<String, Long> mix = new TreeMap<>();
+            int slot = calendar.slotOf(timeslot);
+            if (slot < 0) {
+                return mix;
+            }
+            for (int source = 0; source < sourceCount.get(); source++) {
+                long selections = counts.energyMix[slot * MAX_SOURCES + source];
+                if (selections > 0) {
+                    mix.put(sourceNames[source], selections);
+                }
+            }
+            return mix;
+        }
+
+        public Map<String, Long> bookingsPerUser() {
+            Map<String, Long> perUser = new TreeMap<>();
+            for (int id = 0; id < counts.bookingsPerUser.length; id++) {
+                if (counts.bookingsPerUser[id] != 0) {
+                    perUser.put(userName(id), counts.bookingsPerUser[id]);
+                }
+            }
+            return perUser;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append("Report for ").append(day == null ? "all days" : day).append('\n');
+            text.append("Bookings per hour:\n");
+            for (int hour = 0; hour < 24; hour++) {
+                if (counts.bookingsPerHour[hour] != 0) {
+                    text.append(String.format("  %02d:00 %d%n", hour, counts.bookingsPerHour[hour]));
+                }
+            }
+            text.append("Cancellations: ").append(counts.cancellations).append(", rebookings: ").append(counts.rebookings).append('\n');
+            text.append("Energy mix per timeslot:\n");
+            for (int slot = 0; slot < calendar.getSlotsPerDay(); slot++) {
+                Map<String, Long> mix = energyMix(calendar.timeOf(slot));
+                if (!mix.isEmpty()) {
+                    text.append("  ").append(calendar.timeOf(slot)).append(' ').append(mix).append('\n');
+                }
+            }
+            text.append("Bookings per user:\n");
+            bookingsPerUser().forEach((user, bookings) -> text.append("  ").append(user).append(' ').append(bookings).append('\n'));
+            return text.toString();
+        }
+    }
+
+    private void loadCache() {
+        File file = new File(cacheFile);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CACHE_MAGIC) {
+                return;
+            }
+            int segments = in.readInt();
+            for (int s = 0; s < segments; s++) {
+                Partial partial = new Partial();
+                partial.path = in.readUTF();
+                partial.length = in.readLong();
+                partial.modified = in.readLong();
+                partial.headCrc = in.readLong();
+                int days = in.readInt();
+                for (int d = 0; d < days; d++) {
+                    Counts counts = new Counts();
+                    partial.days.put(in.readUTF(), counts);
+                    for (int hour = 0; hour < 24; hour++) {
+                        counts.bookingsPerHour[hour] = in.readLong();
+                    }
+                    counts.cancellations = in.readLong();
+                    counts.rebookings = in.readLong();
+                    int mixEntries = in.readInt();
+                    for (int m = 0; m < mixEntries; m++) {
+                        int slot = in.readInt();
+                        int source = sourceIndex(in.readUTF());
+                        long selections = in.readLong();
+                        if (source >= 0) {
+                            counts.energyMix[slot * MAX_SOURCES + source] += selections;
+                        }
+                    }
+                    int users = in.readInt();
+                    for (int u = 0; u < users; u++) {
+                        int id = userIndex(in.readUTF());
+                        long bookings = in.readLong();
+                        if (id >= counts.bookingsPerUser.length) {
+                            counts.bookingsPerUser = Arrays.copyOf(counts.bookingsPerUser, Math.max(counts.bookingsPerUser.length * 2, id + 1));
+                        }
+                        counts.bookingsPerUser[id] += bookings;
+                    }
+                }
+                cache.put(partial.path, partial);
+            }
+        } catch (EOFException e) {
+            // A cache cut short is simply rebuilt
+            cache.clear();
+        } catch (IOException e) {
+            System.err.println("Error reading log analytics cache: " + e.getMessage());
+            cache.clear();
+        }
+    }
+
+    private void saveCache() {
+        File file = new File(cacheFile);
+        File temp = new File(cacheFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(cache.size());
+            for (Partial partial : cache.values()) {
+                out.writeUTF(partial.path);
+                out.writeLong(partial.length);
+                out.writeLong(partial.modified);
+                out.writeLong(partial.headCrc);
+                out.writeInt(partial.days.size());
+                for (Map.Entry<String, Counts> day : partial.days.entrySet()) {
+                    Counts counts = day.getValue();
+                    out.writeUTF(day.getKey());
+                    for (int hour = 0; hour < 24; hour++) {
+                        out.writeLong(counts.bookingsPerHour[hour]);
+                    }
+                    out.writeLong(counts.cancellations);
+                    out.writeLong(counts.rebookings);
+                    int mixEntries = 0;
+                    for (long selections : counts.energyMix) {
+                        if (selections > 0) {
+                            mixEntries++;
+                        }
+                    }
+                    out.writeInt(mixEntries);
+                    for (int i = 0; i < counts.energyMix.length; i++) {
+                        if (counts.energyMix[i] > 0) {
+                            out.writeInt(i / MAX_SOURCES);
+                            out.writeUTF(sourceNames[i % MAX_SOURCES]);
+                            out.writeLong(counts.energyMix[i]);
+                        }
+                    }
+                    int users = 0;
+                    for (long bookings : counts.bookingsPerUser) {
+                        if (bookings != 0) {
+                            users++;
+                        }
+                    }
+                    out.writeInt(users);
+                    for (int id = 0; id < counts.bookingsPerUser.length; id++) {
+                        if (counts.bookingsPerUser[id] != 0) {
+                            out.writeUTF(userName(id));
+                            out.writeLong(counts.bookingsPerUser[id]);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing log analytics cache: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing log analytics cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * LogClock class formats the current time as "yyyy-MM-dd HH:mm:ss" for log lines and booking messages
+ * without creating a SimpleDateFormat and Date on every call.
+ * The formatted text of the current second is cached; when the second changes inside the same minute
+ * only the two seconds digits are patched, and the full text is rebuilt at most once a minute.
+ * The cache is an immutable object behind a volatile field, so any number of threads can share it.
+ *
+ */
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+final class LogClock {
+    static final int LENGTH = 19;
+
+    private static final ZoneId zone = ZoneId.systemDefault();
+    private static volatile Second current = format(System.currentTimeMillis() / 1000);
+
+    private LogClock() {
+    }
+
+    /**
+     * Returns the current time as "yyyy-MM-dd HH:mm:ss". Calls within the same second return the same String.
+     */
+    static String currentTime() {
+        return now().text;
+    }
+
+    /**
+     * Writes the current time into dst at the given offset and returns the number of chars written (19).
+     */
+    static int formatTo(char[] dst, int offset) {
+        System.arraycopy(now().chars, 0, dst, offset, LENGTH);
+        return LENGTH;
+    }
+
+    /**
+     * Writes the current time as ASCII bytes into dst at the given offset and returns the number of bytes written (19).
+     */
+    static int formatTo(byte[] dst, int offset) {
+        System.arraycopy(now().bytes, 0, dst, offset, LENGTH);
+        return LENGTH;
+    }
+
+    static void formatTo(StringBuilder builder) {
+        builder.append(now().chars, 0, LENGTH);
+    }
+
+    private static Second now() {
+        long epochSecond = System.currentTimeMillis() / 1000;
+        Second second = current;
+        if (second.epochSecond == epochSecond) {
+            return second;
+        }
+        // Racing threads may both build the next second; either result is correct
+        second = epochSecond / 60 == second.epochSecond / 60 ? second.withSecond(epochSecond) : format(epochSecond);
+        current = second;
+        return second;
+    }
+
+    private static Second format(long epochSecond) {
+        // Zone offsets only change on minute boundaries, so looking it up once a minute is enough
+        ZoneOffset offset = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+        LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, offset);
+        char[] chars = new char[LENGTH];
+        putDigits(chars, 0, time.getYear(), 4);
+        chars[4] = '-';
+        putDigits(chars, 5, time.getMonthValue(), 2);
+        chars[7] = '-';
+        putDigits(chars, 8, time.getDayOfMonth(), 2);
+        chars[10] = ' ';
+        putDigits(chars, 11, time.getHour(), 2);
+        chars[13] = ':';
+        putDigits(chars, 14, time.getMinute(), 2);
+        chars[16] = ':';
+        putDigits(chars, 17, time.getSecond(), 2);
+        return new Second(epochSecond, chars);
+    }
+
+    private static void putDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * The formatted text of one second, in every shape the callers need.
+     */
+    private static final class Second {
+        final long epochSecond;
+        final char[] chars;
+        final byte[] bytes;
+        final String text;
+
+        Second(long epochSecond, char[] chars) {
+            this.epochSecond = epochSecond;
+            this.chars = chars;
+            this.bytes = new byte[LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                bytes[i] = (byte) chars[i];
+            }
+            this.text = new String(chars);
+        }
+
+        Second withSecond(long nextEpochSecond) {
+            char[] patched = chars.clone();
+            putDigits(patched, 17, (int) Math.floorMod(nextEpochSecond, 60L), 2);
+            return new Second(nextEpochSecond, patched);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * LogEvent class is the base of the typed log records written next to the free-text logs.
+ * Every event carries the time it happened; the subclasses add their own fields.
+ * EventCodec turns events into a compact binary form or into one JSON object per line.
+ *
+ */
+
+abstract class LogEvent {
+    static final byte BOOKING = 1;
+    static final byte ENERGY_SELECTION = 2;
+    static final byte SYSTEM = 3;
+
+    final long timestampMillis;
+
+    LogEvent(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Type tag written in front of the event in the binary encoding.
+     */
+    abstract byte type();
+}
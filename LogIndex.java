@@ -0,0 +1,307 @@
+/**
+ * LogIndex class is a sparse time index over one log file, stored next to it as "<log>.idx".
+ * Every N-th timestamped record gets an entry (timestamp key, byte offset), so a time-range
+ * query is a binary search over the entries plus a short scan of the log from the found offset.
+ * The index is extended as the AsyncLogWriter appends batches. If the index file is missing, or the log
+ * no longer matches it (e.g. after moveLog, archiveLog or a rotation), it is rebuilt from the log automatically.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+class LogIndex {
+    static final int DEFAULT_INTERVAL = 256;
+
+    private static final int MAGIC = 0x4c494458; // "LIDX"
+    // Number of leading log bytes whose CRC identifies the file the index was built for
+    private static final int HEAD_BYTES = 64;
+    // magic, interval, indexedLength, headLength, headCrc, recordsSinceEntry, lastKey
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 8;
+
+    private final File logFile;
+    private final File indexFile;
+    private final int interval;
+
+    private long[] keys = new long[64];
+    private long[] offsets = new long[64];
+    private int entries;
+    private int persistedEntries;
+    private long indexedLength;
+    private int headLength;
+    private int headCrc;
+    private int recordsSinceEntry;
+    private long lastKey = -1;
+    private boolean loaded;
+
+    public LogIndex(String logFileName) {
+        this(logFileName, DEFAULT_INTERVAL);
+    }
+
+    public LogIndex(String logFileName, int interval) {
+        this.logFile = new File(logFileName);
+        this.indexFile = new File(logFileName + ".idx");
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Streams the records stamped between from and to (inclusive), e.g. "2023-11-19 14:00:00" to "2023-11-19 15:00:00".
+     * Lines without a timestamp inside the range are included with the record they follow.
+     */
+    public Stream<LogRecord> query(String from, String to) throws IOException {
+        long fromKey = LogRecord.toTimestampKey(from);
+        long toKey = LogRecord.toTimestampKey(to);
+        return tail(fromKey).takeWhile(record -> record.timestampKey() <= toKey);
+    }
+
+    /**
+     * Streams every record stamped at or after the given time, up to the current end of the log.
+     */
+    public Stream<LogRecord> tailSince(String since) throws IOException {
+        return tail(LogRecord.toTimestampKey(since));
+    }
+
+    /**
+     * Receives the offsets of freshly written lines from the log's AsyncLogWriter.
+     */
+    public synchronized void batchWritten(long startOffset, List<String> lines, int[] lineLengths) {
+        if (!loaded || startOffset != indexedLength) {
+            // First batch since startup, or something else wrote to the log: catch up from the file itself
+            try {
+                ensureCurrent();
+            } catch (IOException e) {
+                System.err.println("Error updating log index " + indexFile + ": " + e.getMessage());
+            }
+            return;
+        }
+        long offset = startOffset;
+        for (int i = 0; i < lines.size(); i++) {
+            add(LogRecord.timestampKey(lines.get(i)), offset);
+            offset += lineLengths[i];
+        }
+        indexedLength = offset;
+        updateHead();
+        persist();
+    }
+
+    /**
+     * Forgets the index in memory and on disk; the next query rebuilds it.
+     */
+    public synchronized void invalidate() {
+        reset();
+        loaded = false;
+        if (indexFile.exists() && !indexFile.delete()) {
+            System.err.println("Failed to delete stale log index " + indexFile);
+        }
+    }
+
+    public synchronized int getEntries() {
+        return entries;
+    }
+
+    private Stream<LogRecord> tail(long fromKey) throws IOException {
+        long start;
+        synchronized (this) {
+            ensureCurrent();
+            start = startOffsetFor(fromKey);
+        }
+        MappedLogReader reader = new MappedLogReader(logFile.toPath());
+        return reader.stream(start, false)
+                .dropWhile(record -> record.timestampKey() < fromKey)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing log reader: " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Returns the offset of the last entry older than the key; the records in between are scanned.
+     */
+    private long startOffsetFor(long fromKey) {
+        int low = 0;
+        int high = entries - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < fromKey) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found < 0 ? 0 : offsets[found];
+    }
+
+    private void ensureCurrent() throws IOException {
+        if (!loaded) {
+            loadFromDisk();
+            loaded = true;
+        }
+        long length = logFile.length();
+        if (length < indexedLength || headCrc != crcOfHead(headLength)) {
+            // The log was replaced, truncated or rotated since the index was written
+            reset();
+        }
+        if (length > indexedLength) {
+            catchUp();
+        }
+    }
+
+    private void catchUp() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        try (MappedLogReader reader = new MappedLogReader(logFile.toPath());
+             Stream<LogRecord> records = reader.stream(indexedLength, false)) {
+            records.forEach(record -> {
+                add(record.timestampKey(), record.getOffset());
+                indexedLength = record.getEndOffset();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        updateHead();
+        persist();
+    }
+
+    private void add(long key, long offset) {
+        if (key < 0) {
+            return;
+        }
+        if (recordsSinceEntry == 0 && key >= lastKey) {
+            if (entries == keys.length) {
+                keys = Arrays.copyOf(keys, entries * 2);
+                offsets = Arrays.copyOf(offsets, entries * 2);
+            }
+            keys[entries] = key;
+            offsets[entries] = offset;
+            entries++;
+        }
+        lastKey = Math.max(lastKey, key);
+        recordsSinceEntry = (recordsSinceEntry + 1) % interval;
+    }
+
+    private void reset() {
+        entries = 0;
+        persistedEntries = 0;
+        indexedLength = 0;
+        headLength = 0;
+        headCrc = 0;
+        recordsSinceEntry = 0;
+        lastKey = -1;
+    }
+
+    private void loadFromDisk() {
+        reset();
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != interval) {
+                return;
+            }
+            long length = in.readLong();
+            int storedHeadLength = in.readInt();
+            int storedHeadCrc = in.readInt();
+            int storedRecords = in.readInt();
+            long storedLastKey = in.readLong();
+            int count = (int) ((indexFile.length() - HEADER_SIZE) / 16);
+            keys = new long[Math.max(64, count)];
+            offsets = new long[keys.length];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            entries = count;
+            persistedEntries = count;
+            indexedLength = length;
+            headLength = storedHeadLength;
+            headCrc = storedHeadCrc;
+            recordsSinceEntry = storedRecords;
+            lastKey = storedLastKey;
+        } catch (IOException e) {
+            // A damaged index is simply rebuilt
+            reset();
+        }
+    }
+
+    private void persist() {
+        try {
+            if (persistedEntries == 0 || !indexFile.exists()) {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+                    writeHeader(out);
+                    writeEntries(out, 0);
+                }
+            } else {
+                try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+                    file.seek(HEADER_SIZE + persistedEntries * 16L);
+                    writeEntries(file, persistedEntries);
+                    file.seek(0);
+                    writeHeader(file);
+                }
+            }
+            persistedEntries = entries;
+        } catch (IOException e) {
+            System.err.println("Error writing log index " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    private void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(interval);
+        out.writeLong(indexedLength);
+        out.writeInt(headLength);
+        out.writeInt(headCrc);
+        out.writeInt(recordsSinceEntry);
+        out.writeLong(lastKey);
+    }
+
+    private void writeEntries(DataOutput out, int from) throws IOException {
+        for (int i = from; i < entries; i++) {
+            out.writeLong(keys[i]);
+            out.writeLong(offsets[i]);
+        }
+    }
+
+    private void updateHead() {
+        if (headLength < HEAD_BYTES) {
+            headLength = (int) Math.min(HEAD_BYTES, indexedLength);
+            headCrc = crcOfHead(headLength);
+        }
+    }
+
+    private int crcOfHead(int length) {
+        if (length == 0) {
+            return 0;
+        }
+        byte[] head = new byte[length];
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            if (file.length() < length) {
+                return ~headCrc;
+            }
+            file.readFully(head);
+        } catch (IOException e) {
+            return ~headCrc;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        return (int) crc.getValue();
+    }
+}
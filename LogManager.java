@@ -1,26 +1,35 @@
 /**
  * LogManager class manages logging operations, including creating, moving, deleting, and archiving log files.
  * It also handles saving and loading station and energy logs using byte streams, and logs energy source selections.
+ * Log lines are handed to one AsyncLogWriter per log file, which writes them in batches on a background thread.
+ * Large logs can be read as a lazy Stream of LogRecords backed by a memory-mapped MappedLogReader,
+ * and a sparse LogIndex per log answers time-range queries without scanning the whole file.
+ * Logs are rotated by size or period into timestamped, gzip-compressed segments under archive/.
+ * Besides the text logs, typed LogEvents can be written to a binary event log (and optionally a JSONL log)
+ * so that consumers read fields directly instead of parsing message strings.
+ * createLog records its latency and dropped lines in Metrics.
  * 
  */
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.UncheckedIOException;
 
 class LogManager {
     
@@ -32,23 +41,229 @@ class LogManager {
     // Functionality of the energy management system log file
     static String energyLog = "energy_log.txt";
 
+    // Typed events, binary and (when jsonEvents is set) one JSON object per line
+    static String eventLog = "event_log.bin";
+    static String eventJsonLog = "event_log.jsonl";
+    static boolean jsonEvents = false;
+
+    // Settings used when a writer is created for a log file
+    static int writerCapacity = AsyncLogWriter.DEFAULT_CAPACITY;
+    static int writerBatchSize = AsyncLogWriter.DEFAULT_BATCH_SIZE;
+    static long writerFlushIntervalMillis = AsyncLogWriter.DEFAULT_FLUSH_INTERVAL_MILLIS;
+    static AsyncLogWriter.BackPressurePolicy writerPolicy = AsyncLogWriter.BackPressurePolicy.BLOCK;
+
+    // Rotation settings for new writers; 0 disables a trigger or keeps every segment
+    static long rotationMaxBytes = 16L * 1024 * 1024;
+    static long rotationPeriodMillis = 0;
+    static int retentionMaxSegments = 0;
+    static long retentionMaxAgeMillis = 0;
+
+    private static final LatencyHistogram createLogLatency = Metrics.histogram("log.createLog");
+    private static final LongAdder droppedLines = Metrics.counter("log.droppedLines");
+
+    // One background writer per log file, created on first use
+    private static final Map<String, AsyncLogWriter> writers = new ConcurrentHashMap<>();
+
+    // One time index per log file, kept current by the log's writer
+    private static final Map<String, LogIndex> indexes = new ConcurrentHashMap<>();
+
+    // Binary event output, guarded by eventLock
+    private static final Object eventLock = new Object();
+    private static final EventCodec eventEncoder = new EventCodec();
+    private static final ByteBuffer eventBuffer = ByteBuffer.allocate(256 * 1024);
+    private static OutputStream eventOut;
+
+    static {
+        // Write out queued lines when the JVM exits without an explicit shutdown()
+        Runtime.getRuntime().addShutdownHook(new Thread(LogManager::shutdown, "log-manager-shutdown"));
+    }
+
     
     public static void createLog(String logFileName, String message) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(logFileName, true))) {
-            writer.println(getCurrentTime() + " : " + message);
-            System.out.println("Log created successfully.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error creating log: " + e.getMessage());
+        long start = System.nanoTime();
+        if (!getWriter(logFileName).append(getCurrentTime() + " : " + message)) {
+            droppedLines.increment();
+            System.err.println("Error creating log: line dropped for " + logFileName);
         }
+        createLogLatency.recordSince(start);
     } 
 
+    /**
+     * Configures the writers created from now on. Writers that already exist keep their settings.
+     */
+    public static void configureWriters(int capacity, int batchSize, long flushIntervalMillis, AsyncLogWriter.BackPressurePolicy policy) {
+        writerCapacity = capacity;
+        writerBatchSize = batchSize;
+        writerFlushIntervalMillis = flushIntervalMillis;
+        writerPolicy = policy;
+    }
+
+    /**
+     * Configures rotation for the writers created from now on: rotate when the log reaches maxBytes or
+     * periodMillis has passed, keep at most maxSegments archived segments no older than maxAgeMillis.
+     */
+    public static void configureRotation(long maxBytes, long periodMillis, int maxSegments, long maxAgeMillis) {
+        rotationMaxBytes = maxBytes;
+        rotationPeriodMillis = periodMillis;
+        retentionMaxSegments = maxSegments;
+        retentionMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Blocks until every line queued for the given log file is on disk.
+     */
+    public static void flushLog(String logFileName) {
+        AsyncLogWriter writer = writers.get(logFileName);
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Drains all writers and stops their threads. Later log calls start new writers.
+     */
+    public static void shutdown() {
+        for (String logFileName : writers.keySet()) {
+            AsyncLogWriter writer = writers.remove(logFileName);
+            if (writer != null) {
+                writer.shutdown();
+            }
+        }
+        closeEvents();
+        LogRotator.awaitCompressions(30_000);
+    }
+
+    /**
+     * Appends a typed event to the binary event log, and to the JSONL event log if jsonEvents is set.
+     */
+    public static void writeEvent(LogEvent event) {
+        synchronized (eventLock) {
+            try {
+                eventBuffer.clear();
+                eventEncoder.encode(event, eventBuffer);
+                if (eventOut == null) {
+                    eventOut = new BufferedOutputStream(new FileOutputStream(eventLog, true), 64 * 1024);
+                }
+                eventOut.write(eventBuffer.array(), 0, eventBuffer.position());
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                System.err.println("Error writing event: " + e.getMessage());
+            }
+        }
+        if (jsonEvents) {
+            StringBuilder json = new StringBuilder(128);
+            synchronized (eventLock) {
+                eventEncoder.encodeJson(event, json);
+            }
+            getWriter(eventJsonLog).append(json.toString());
+        }
+    }
+
+    /**
+     * Writes buffered events to the binary event log.
+     */
+    public static void flushEvents() {
+        synchronized (eventLock) {
+            if (eventOut != null) {
+                try {
+                    eventOut.flush();
+                } catch (IOException e) {
+                    System.err.println("Error flushing events: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every event of a binary event log in order, without parsing any text.
+     */
+    public static void readEvents(String eventLogFileName, Consumer<LogEvent> consumer) throws IOException {
+        if (eventLogFileName.equals(eventLog)) {
+            flushEvents();
+        }
+        EventCodec decoder = new EventCodec();
+        try (FileChannel channel = FileChannel.open(new File(eventLogFileName).toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                // Map a window at the next record; a record cut by the window end is read again from the next window
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MappedLogReader.DEFAULT_WINDOW_SIZE, size - position));
+                LogEvent event;
+                while ((event = decoder.decode(window)) != null) {
+                    consumer.accept(event);
+                }
+                if (window.position() == 0) {
+                    System.err.println("Ignoring incomplete event record at offset " + position + " in " + eventLogFileName);
+                    break;
+                }
+                position += window.position();
+            }
+        }
+    }
+
+    /**
+     * Reads every event of a JSONL event log in order, including rotated segments.
+     */
+    public static void readJsonEvents(String jsonLogFileName, Consumer<LogEvent> consumer) throws IOException {
+        EventCodec decoder = new EventCodec();
+        try (Stream<String> lines = streamLogLines(jsonLogFileName)) {
+            lines.filter(line -> !line.isEmpty())
+                    .forEach(line -> consumer.accept(decoder.decodeJson(line)));
+        }
+    }
+
+    private static void closeEvents() {
+        synchronized (eventLock) {
+            if (eventOut != null) {
+                try {
+                    eventOut.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing event log: " + e.getMessage());
+                }
+                eventOut = null;
+            }
+        }
+    }
+
+    private static AsyncLogWriter getWriter(String logFileName) {
+        return writers.computeIfAbsent(logFileName, name -> {
+            AsyncLogWriter writer = new AsyncLogWriter(name, writerCapacity, writerBatchSize, writerFlushIntervalMillis, writerPolicy);
+            writer.setBatchListener(getIndex(name)::batchWritten);
+            if (rotationMaxBytes > 0 || rotationPeriodMillis > 0) {
+                writer.setRotator(new LogRotator(name, rotationMaxBytes, rotationPeriodMillis, retentionMaxSegments, retentionMaxAgeMillis));
+            }
+            return writer;
+        });
+    }
+
+    private static LogIndex getIndex(String logFileName) {
+        return indexes.computeIfAbsent(logFileName, LogIndex::new);
+    }
+
+    /**
+     * Streams the records of a log stamped between from and to, inclusive, e.g.
+     * queryLog(energyLog, "2023-11-19 14:00:00", "2023-11-19 15:00:00"). Close the stream when done.
+     */
+    public static Stream<LogRecord> queryLog(String logFileName, String from, String to) throws IOException {
+        flushLog(logFileName);
+        return getIndex(logFileName).query(from, to);
+    }
+
+    /**
+     * Streams the records of a log stamped at or after the given time. Close the stream when done.
+     */
+    public static Stream<LogRecord> tailLog(String logFileName, String since) throws IOException {
+        flushLog(logFileName);
+        return getIndex(logFileName).tailSince(since);
+    }
+
    public static void moveLog(String source, String destination) {
         File sourceFile = new File(source);
         File destFile = new File(destination);
 
         try {
             // Check if the source file exists
+            flushLog(source);
             if (!sourceFile.exists()) {
                 System.out.println("Source file does not exist.");
                 return;
@@ -62,6 +277,10 @@ class LogManager {
             // Move the file using java.nio.file
             Files.move(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
+            // Neither index describes the files at these names any more
+            getIndex(source).invalidate();
+            getIndex(destination).invalidate();
+
             System.out.println("Log file moved successfully.");
         } catch (IOException e) {
             handleMoveLogError(e, source, destination);
@@ -79,6 +298,7 @@ class LogManager {
 
    public static void deleteLog(String logFileName) {
         File logFile = new File(logFileName);
+        flushLog(logFileName);
 
         // Check if the file exists before attempting to delete
         if (!logFile.exists()) {
@@ -102,23 +322,16 @@ class LogManager {
     }
 
     private static void archiveLog(String logFileName) {
-        File logFile = new File(logFileName);
-        File archiveDirectory = new File("archive");
-
-        // Check if the archive directory exists; if not, create it
-        if (!archiveDirectory.exists()) {
-            archiveDirectory.mkdirs();
-        }
-
-        // Create the destination path for archiving
-        Path destinationPath = archiveDirectory.toPath().resolve(logFile.toPath().getFileName());
-
-        try {
-            // Move the log file to the archive directory
-            Files.move(logFile.toPath(), destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        // Archive under a timestamped name so earlier archives of the same log are kept,
+        // and compress it in the background like a rotated segment. The log's writer thread moves the file,
+        // after the lines queued so far, so no batch is written while it is moved
+        LogRotator archiver = new LogRotator(logFileName, 0, 0, retentionMaxSegments, retentionMaxAgeMillis);
+        File archived = getWriter(logFileName).rotateNow(archiver);
+        if (archived != null) {
+            getIndex(logFileName).invalidate();
             System.out.println("Log file archived successfully.");
-        } catch (IOException e) {
-            handleArchiveLogError(e, logFileName);
+        } else {
+            handleArchiveLogError(new IOException("could not move file into " + LogRotator.ARCHIVE_DIRECTORY), logFileName);
         }
     }
 
@@ -131,6 +344,7 @@ class LogManager {
     }
 public static void saveStationLogToFile(String stationLog, List<String> stationLogs) {
         // Save the station logs to a file using byte streams
+        flushLog(stationLog);
         try (OutputStream outputStream = new FileOutputStream(stationLog)) {
             for (String log : stationLogs) {
                 System.out.println(log);
@@ -145,22 +359,12 @@ public static void saveStationLogToFile(String stationLog, List<String> stationL
     }
 
     public static List<String> loadStationLogFromFile(String stationLog) {
-        // Load the station logs from a file using byte streams
+        // Load the station logs, including rotated segments, oldest first
         List<String> stationLogs = new ArrayList<>();
-        try (InputStream inputStream = new FileInputStream(stationLog)) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, bytesRead);
-            }
-            String logData = byteArrayOutputStream.toString();
-            String[] logs = logData.split("\n");
-            for (String log : logs) {
-                stationLogs.add(log);
-            }
+        try (Stream<String> lines = streamLogLines(stationLog)) {
+            lines.forEach(stationLogs::add);
             System.out.println("Station logs loaded from file.");
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
             System.err.println("Error loading station logs: " + e.getMessage());
         }
@@ -168,40 +372,72 @@ public static void saveStationLogToFile(String stationLog, List<String> stationL
     }
     public static void logEnergySources(int timeslot, List<String> energySources) {
         // Log the selected energy sources for a specific timeslot
-        try (PrintWriter writer = new PrintWriter(new FileWriter(energyLog, true))) {
-            writer.println(getCurrentTime() + " : Timeslot " + timeslot + " - Selected Energy Sources: " + String.join(",", energySources));
-            System.out.println("Energy sources logged successfully.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error logging energy sources: " + e.getMessage());
+        String line = getCurrentTime() + " : Timeslot " + timeslot + " - Selected Energy Sources: " + String.join(",", energySources);
+        if (!getWriter(energyLog).append(line)) {
+            System.err.println("Error logging energy sources: line dropped for " + energyLog);
         }
     }
     public static List<String> loadEnergyLogFromFile(String energyLog) {
-        // Load the energy logs from a file using byte streams
+        // Load the energy logs, including rotated segments, oldest first
         List<String> energyLogs = new ArrayList<>();
-        try (InputStream inputStream = new FileInputStream(energyLog)) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, bytesRead);
-            }
-            String logData = byteArrayOutputStream.toString();
-            String[] logs = logData.split("\n");
-            for (String log : logs) {
-                energyLogs.add(log);
-            }
+        try (Stream<String> lines = streamLogLines(energyLog)) {
+            lines.forEach(energyLogs::add);
             System.out.println("Energy logs loaded from file.");
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
             System.err.println("Error loading energy logs: " + e.getMessage());
         }
         return energyLogs;
     }
 
+    /**
+     * Streams the lines of a log file without loading it into memory. Close the stream when done.
+     */
+    public static Stream<LogRecord> streamLog(String logFileName) throws IOException {
+        return streamLog(logFileName, 0, false);
+    }
+
+    /**
+     * Streams the lines of a log file starting at a byte offset, optionally split for a parallel scan.
+     */
+    public static Stream<LogRecord> streamLog(String logFileName, long fromOffset, boolean parallel) throws IOException {
+        flushLog(logFileName);
+        MappedLogReader reader = new MappedLogReader(new File(logFileName).toPath());
+        return reader.stream(fromOffset, parallel).onClose(() -> closeReader(reader));
+    }
+
+    /**
+     * Streams the lines of a log file from the first one stamped at or after the given "yyyy-MM-dd HH:mm:ss" time.
+     */
+    public static Stream<LogRecord> streamLogFrom(String logFileName, String timestamp, boolean parallel) throws IOException {
+        flushLog(logFileName);
+        MappedLogReader reader = new MappedLogReader(new File(logFileName).toPath());
+        return reader.streamFrom(timestamp, parallel).onClose(() -> closeReader(reader));
+    }
+
+    /**
+     * Streams every line of a log: the archived segments oldest first, then the live file.
+     * Compressed segments are decompressed on the fly. Close the stream when done.
+     */
+    public static Stream<String> streamLogLines(String logFileName) throws IOException {
+        Stream<String> archived = LogRotator.segments(logFileName).stream().flatMap(LogRotator::lines);
+        if (!new File(logFileName).exists()) {
+            return archived;
+        }
+        Stream<String> live = streamLog(logFileName).map(LogRecord::line);
+        return Stream.concat(archived, live);
+    }
+
+    private static void closeReader(MappedLogReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log reader: " + e.getMessage());
+        }
+    }
+
     private static String getCurrentTime() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        return sdf.format(new Date());
+        return LogClock.currentTime();
     }
 }
 
@@ -0,0 +1,158 @@
+/**
+ * LogRecord class is one line of a log file as seen by MappedLogReader.
+ * It only remembers where the line sits in the mapped file; the text is decoded on first use,
+ * and the timestamp key can be read straight from the bytes without decoding the line at all.
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class LogRecord {
+    // "yyyy-MM-dd HH:mm:ss" followed by " : " as written by LogManager.createLog
+    static final int TIMESTAMP_LENGTH = 19;
+    private static final String SEPARATOR = " : ";
+
+    private final ByteBuffer buffer;
+    private final int position;
+    private final int length;
+    private final long offset;
+    private final long endOffset;
+    private String line;
+
+    LogRecord(ByteBuffer buffer, int position, int length, long offset, long endOffset) {
+        this.buffer = buffer;
+        this.position = position;
+        this.length = length;
+        this.offset = offset;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * Byte offset of the start of this line in the log file.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Byte offset just past this line and its line separator.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String line() {
+        if (line == null) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(position + i);
+            }
+            line = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return line;
+    }
+
+    /**
+     * Returns the leading "yyyy-MM-dd HH:mm:ss" timestamp, or null if the line does not start with one.
+     */
+    public String timestamp() {
+        return timestampKey() < 0 ? null : line().substring(0, TIMESTAMP_LENGTH);
+    }
+
+    /**
+     * Returns the text after the "timestamp : " prefix, or the whole line if there is no timestamp.
+     */
+    public String message() {
+        String text = line();
+        if (timestampKey() >= 0 && text.startsWith(SEPARATOR, TIMESTAMP_LENGTH)) {
+            return text.substring(TIMESTAMP_LENGTH + SEPARATOR.length());
+        }
+        return text;
+    }
+
+    /**
+     * Returns the timestamp as a sortable number yyyyMMddHHmmss (e.g. 20231119192356),
+     * or -1 if the line does not start with a timestamp.
+     */
+    public long timestampKey() {
+        if (length < TIMESTAMP_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            byte b = buffer.get(position + i);
+            if (i == 4 || i == 7) {
+                if (b != '-') {
+                    return -1;
+                }
+            } else if (i == 10) {
+                if (b != ' ') {
+                    return -1;
+                }
+            } else if (i == 13 || i == 16) {
+                if (b != ':') {
+                    return -1;
+                }
+            } else if (b >= '0' && b <= '9') {
+                key = key * 10 + (b - '0');
+            } else {
+                return -1;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Same as timestampKey(), for a line that is still a String (e.g. one about to be written).
+     */
+    public static long timestampKey(CharSequence line) {
+        if (line.length() < TIMESTAMP_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            char c = line.charAt(i);
+            char expected = (i == 4 || i == 7) ? '-' : i == 10 ? ' ' : (i == 13 || i == 16) ? ':' : 0;
+            if (expected != 0) {
+                if (c != expected) {
+                    return -1;
+                }
+            } else if (c >= '0' && c <= '9') {
+                key = key * 10 + (c - '0');
+            } else {
+                return -1;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Converts a "yyyy-MM-dd HH:mm:ss" string (or a prefix of one, e.g. "2023-11-19 14") to the
+     * smallest timestamp key it covers, so it can be compared with timestampKey().
+     */
+    public static long toTimestampKey(String timestamp) {
+        long key = 0;
+        int digits = 0;
+        for (int i = 0; i < timestamp.length() && digits < 14; i++) {
+            char c = timestamp.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key = key * 10 + (c - '0');
+                digits++;
+            }
+        }
+        while (digits++ < 14) {
+            key *= 10;
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return line();
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * LogRotator class rotates one log file by size or by wall-clock period.
+ * A rotated segment is renamed into the archive directory with a timestamped name
+ * (e.g. archive/energy_log-20231119-192356-042.txt) and then gzip-compressed on a background thread,
+ * so the writer only pays for a rename. Old segments are removed by count or by age.
+ * segments() lists the archived segments of a log oldest first, for readers that walk the whole history.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+class LogRotator {
+    static final String ARCHIVE_DIRECTORY = "archive";
+
+    // Compression runs here so that writers never wait for gzip
+    private static final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final List<Future<?>> pending = new ArrayList<>();
+
+    private final File logFile;
+    private final long maxBytes;
+    private final long periodMillis;
+    private final int maxSegments;
+    private final long maxAgeMillis;
+    private long segmentStart;
+
+    /**
+     * maxBytes and periodMillis trigger a rotation (0 disables that trigger);
+     * maxSegments and maxAgeMillis limit how many archived segments are kept (0 keeps all).
+     */
+    public LogRotator(String logFileName, long maxBytes, long periodMillis, int maxSegments, long maxAgeMillis) {
+        this.logFile = new File(logFileName);
+        this.maxBytes = maxBytes;
+        this.periodMillis = periodMillis;
+        this.maxSegments = maxSegments;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segmentStart = segmentStartOf(logFile);
+    }
+
+    /**
+     * Rotates the log if it has reached the size limit or its period has ended.
+     * Must be called by the thread that writes the log, before it appends.
+     */
+    public synchronized void rotateIfNeeded() {
+        long length = logFile.length();
+        if (length == 0) {
+            segmentStart = System.currentTimeMillis();
+            return;
+        }
+        boolean tooBig = maxBytes > 0 && length >= maxBytes;
+        boolean expired = periodMillis > 0 && System.currentTimeMillis() - segmentStart >= periodMillis;
+        if (tooBig || expired) {
+            rotate();
+        }
+    }
+
+    /**
+     * Moves the current log into the archive under a timestamped name and queues it for compression.
+     * Returns the archived file, or null if there was nothing to rotate.
+     */
+    public synchronized File rotate() {
+        if (!logFile.exists()) {
+            return null;
+        }
+        File segment = archive(logFile);
+        segmentStart = System.currentTimeMillis();
+        if (segment != null) {
+            synchronized (pending) {
+                pending.removeIf(Future::isDone);
+                pending.add(compressor.submit(() -> {
+                    compress(segment);
+                    applyRetention();
+                }));
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Moves a log file into the archive directory under a timestamped name that never overwrites
+     * an earlier segment. Returns the new file, or null if the move failed.
+     */
+    static File archive(File logFile) {
+        File directory = new File(ARCHIVE_DIRECTORY);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        // Names sort in rotation order; on a clash the stamp moves forward a millisecond
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        String[] parts = splitName(logFile.getName());
+        long time = System.currentTimeMillis();
+        File segment = new File(directory, parts[0] + "-" + format.format(new Date(time)) + parts[1]);
+        while (segment.exists() || new File(segment.getPath() + ".gz").exists()) {
+            time++;
+            segment = new File(directory, parts[0] + "-" + format.format(new Date(time)) + parts[1]);
+        }
+        try {
+            Files.move(logFile.toPath(), segment.toPath());
+            return segment;
+        } catch (IOException e) {
+            System.err.println("Error rotating log file " + logFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the archived segments of a log, oldest first. A segment that is still being compressed
+     * is returned in its uncompressed form. A legacy archive/<name> from archiveLog comes first.
+     */
+    static List<File> segments(String logFileName) {
+        String[] parts = splitName(new File(logFileName).getName());
+        File directory = new File(ARCHIVE_DIRECTORY);
+        File[] files = directory.listFiles();
+        List<File> segments = new ArrayList<>();
+        if (files == null) {
+            return segments;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(parts[0] + parts[1])) {
+                segments.add(0, file);
+            } else if (name.startsWith(parts[0] + "-") && name.length() > parts[0].length() + 1
+                    && Character.isDigit(name.charAt(parts[0].length() + 1))) {
+                if (name.endsWith(parts[1])) {
+                    segments.add(file);
+                } else if (name.endsWith(parts[1] + ".gz")
+                        && !new File(directory, name.substring(0, name.length() - 3)).exists()) {
+                    segments.add(file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Streams the lines of one archived segment, decompressing it if needed. Close the stream when done.
+     */
+    static Stream<String> lines(File segment) {
+        try {
+            InputStream in = new FileInputStream(segment);
+            if (segment.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+            return reader.lines().onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for queued compressions to finish, e.g. before the program exits.
+     */
+    static void awaitCompressions(long timeoutMillis) {
+        List<Future<?>> waiting;
+        synchronized (pending) {
+            waiting = new ArrayList<>(pending);
+            pending.clear();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Future<?> future : waiting) {
+            try {
+                future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                System.err.println("Log compression did not finish: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void compress(File segment) {
+        File compressed = new File(segment.getPath() + ".gz");
+        File temp = new File(segment.getPath() + ".gz.tmp");
+        try (InputStream in = new FileInputStream(segment);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            System.err.println("Error compressing log segment " + segment + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment.toPath());
+        } catch (IOException e) {
+            System.err.println("Error finishing compressed log segment " + compressed + ": " + e.getMessage());
+        }
+    }
+
+    private void applyRetention() {
+        List<File> segments = segments(logFile.getPath());
+        long now = System.currentTimeMillis();
+        int excess = maxSegments > 0 ? segments.size() - maxSegments : 0;
+        for (File segment : segments) {
+            boolean tooOld = maxAgeMillis > 0 && now - segment.lastModified() > maxAgeMillis;
+            if (excess > 0 || tooOld) {
+                if (segment.delete()) {
+                    excess--;
+                } else {
+                    System.err.println("Failed to delete old log segment " + segment);
+                }
+            }
+        }
+    }
+
+    private static long segmentStartOf(File logFile) {
+        try {
+            return Files.readAttributes(logFile.toPath(), BasicFileAttributes.class).creationTime().toMillis();
+        } catch (IOException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Splits "energy_log.txt" into "energy_log" and ".txt".
+     */
+    private static String[] splitName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? new String[] {name.substring(0, dot), name.substring(dot)} : new String[] {name, ""};
+    }
+}
@@ -1,45 +1,76 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
+import java.util.function.Function;
 
 public class Main {
 
     public static void main(String[] args) {
-        DataExchangeSimulation simulation = new DataExchangeSimulation();
-        simulation.simulateDataExchange();
+        long startup = System.nanoTime();
+        Metrics.registerMBean();
 
         User externalUser = new User("ExternalUser2", false);
         User admin = new User("Admin1", true);
 
         // Create charging station
         ChargingStation chargingStation = new ChargingStation("Station1");
-        chargingStation.loadStateFromFile();
+        // Bookings are appended to src/station_state.journal; the first run migrates the text state file into it
+        chargingStation.openJournal(BookingJournal.FsyncPolicy.BATCHED);
+        // Only the startup image's header is read here; the bookings are read when the first booking is made
+        boolean fromImage = chargingStation.loadStartupImage();
+        if (!fromImage) {
+            chargingStation.loadStateFromFile();
+        }
+
+        // Booking and energy events go to the logging, metrics and persistence consumers on their own threads
+        Function<String, ChargingStation> stations = id -> chargingStation;
+        EventBus eventBus = new EventBus("main", EventBus.DEFAULT_CAPACITY, EventBus.WaitStrategy.BLOCKING)
+                .subscribe("logging", StationEventHandlers.logging(stations))
+                .subscribe("metrics", StationEventHandlers.metrics())
+                .subscribe("persistence", StationEventHandlers.persistence(stations))
+                .start();
+        chargingStation.setEventBus(eventBus);
 
         // Book timeslot and prioritize queue
         chargingStation.showAvailableTimeslots();
+        System.out.printf("Startup: timeslots shown after %.1f ms (%s)%n",
+                (System.nanoTime() - startup) / 1e6, fromImage ? "from startup image" : "from state file");
         Scanner scanner = new Scanner(System.in);
         int choice = Integer.parseInt(scanner.nextLine());
         //scanner.close();
-        int[] choices = chargingStation.bookTimeslot(externalUser, choice);
+        int[] choices = chargingStation.bookTimeslot(externalUser, choice, scanner);
         int energyChoice = choices[1];
         int chosenTimeslot = choices[0];
-        List<String> stationLogs = new ArrayList<>();
         if (chosenTimeslot != -1) {
-            System.out.println(externalUser.username + " booked timeslot " + chargingStation.getTimeRange(chosenTimeslot) + " at " + chargingStation.getCurrentTime());
-            stationLogs.add(externalUser.username + " booked timeslot " + chargingStation.getTimeRange(chosenTimeslot) + " at " + chargingStation.getCurrentTime());
+            String bookingMessage = externalUser.username + " booked timeslot " + chargingStation.getTimeRange(chosenTimeslot) + " at " + chargingStation.getCurrentTime();
+            System.out.println(bookingMessage);
 
             chargingStation.displayAvailableEnergySources();
+            // The chosen source may be out of capacity in this slot; the allocator then picks another
+            // The selection is published to the event bus, which logs it
+            if (chargingStation.allocateEnergy(chosenTimeslot, energyChoice) == null) {
+                System.out.println("No energy source has capacity left for this timeslot.");
+            }
             //Scanner scan = new Scanner(System.in);
             //energyChoice = scanner.nextInt();
             //scan.close();
         }
         chargingStation.prioritizeQueue(admin);
 
-        // Create and manage log files
-        LogManager.createLog(LogManager.systemLog, "System updated successfully");
-        LogManager.createLog(LogManager.stationLog, stationLogs.get(0));
-        LogManager.createLog(LogManager.energyLog, "User made a selection "+chargingStation.getSource(energyChoice) +" in the energy management system.");
+        // Run after the booking, so the first timeslots are not held up by it
+        DataExchangeSimulation simulation = new DataExchangeSimulation();
+        simulation.simulateDataExchange();
+
+        // The booking and energy selection were published by the station; the consumers write the logs and the typed events
+        eventBus.publish(SystemEvent.of("System updated successfully"));
+
+        // Let the consumers handle every event, then write out the queued log lines before exiting
+        eventBus.close();
+        // A delayed save would otherwise be lost with the daemon saver thread
+        chargingStation.flushPendingSave();
+        LogManager.shutdown();
+        chargingStation.closeJournal();
+        chargingStation.saveStartupImage();
+        Metrics.writeDump("metrics.txt");
 
 
 
@@ -0,0 +1,232 @@
+/**
+ * MappedLogReader class streams the lines of a log file through FileChannel memory mapping.
+ * The file is mapped in windows, so multi-GB logs are read without copying them onto the heap,
+ * and every line is handed out as a LogRecord that decodes its text only when asked.
+ * Streams can start at a byte offset or at the first line with a given timestamp, and can be
+ * split at line boundaries for parallel scans on several cores.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class MappedLogReader implements Closeable {
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    // Ranges smaller than this are not split any further in parallel mode
+    static final long MIN_SPLIT_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    public MappedLogReader(Path logFile) throws IOException {
+        this(logFile, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLogReader(Path logFile, int windowSize) throws IOException {
+        this.channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        // Lines appended after opening are not seen; they belong to the next reader
+        this.size = channel.size();
+        this.windowSize = Math.max(4096, windowSize);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public Stream<LogRecord> stream() {
+        return stream(0, false);
+    }
+
+    /**
+     * Streams the lines starting at the given byte offset. The offset should be the start of a line,
+     * e.g. a value returned by LogRecord.getOffset() or getEndOffset().
+     */
+    public Stream<LogRecord> stream(long fromOffset, boolean parallel) {
+        long start = Math.max(0, Math.min(fromOffset, size));
+        return StreamSupport.stream(new LineSpliterator(start, size), parallel);
+    }
+
+    /**
+     * Streams the lines from the first one stamped at or after the given "yyyy-MM-dd HH:mm:ss" time.
+     * Assumes the log is in time order, as LogManager writes it, and finds the start with a binary search.
+     */
+    public Stream<LogRecord> streamFrom(String timestamp, boolean parallel) {
+        return stream(offsetOf(LogRecord.toTimestampKey(timestamp)), parallel);
+    }
+
+    /**
+     * Returns the offset of the first line whose timestamp key is at or after the given key, or the file size.
+     */
+    public long offsetOf(long timestampKey) {
+        long low = 0;
+        long high = size;
+        // Invariant: every timestamped line starting before 'low' is older than the key
+        while (high - low > windowSize / 16) {
+            long middle = lineStartAtOrAfter(low + (high - low) / 2);
+            if (middle >= high) {
+                break;
+            }
+            LogRecord record = firstTimestamped(middle, high);
+            if (record == null || record.timestampKey() >= timestampKey) {
+                high = middle;
+            } else {
+                low = record.getEndOffset();
+            }
+        }
+        try (Stream<LogRecord> lines = stream(low, false)) {
+            return lines.filter(record -> record.timestampKey() >= timestampKey)
+                    .findFirst()
+                    .map(LogRecord::getOffset)
+                    .orElse(size);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private LogRecord firstTimestamped(long from, long to) {
+        LineSpliterator lines = new LineSpliterator(from, to);
+        LogRecord[] found = new LogRecord[1];
+        while (found[0] == null && lines.tryAdvance(record -> {
+            if (record.timestampKey() >= 0) {
+                found[0] = record;
+            }
+        })) {
+            // keep reading until a timestamped line turns up
+        }
+        return found[0];
+    }
+
+    /**
+     * Returns the start of the first line that begins at or after the given offset.
+     */
+    private long lineStartAtOrAfter(long offset) {
+        if (offset <= 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = offset - 1;
+        try {
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return size;
+    }
+
+    private MappedByteBuffer map(long position, long length) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Walks the lines starting in [position, end). A line that starts inside the range is read
+     * to its end even if that lies past 'end', so adjacent ranges never share or lose a line.
+     */
+    private class LineSpliterator implements Spliterator<LogRecord> {
+        private long position;
+        private final long end;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        LineSpliterator(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super LogRecord> action) {
+            if (position >= end) {
+                return false;
+            }
+            long length = windowSize;
+            while (true) {
+                if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                    window = map(position, Math.min(length, size - position));
+                    windowStart = position;
+                }
+                int lineStart = (int) (position - windowStart);
+                int limit = window.limit();
+                int newline = -1;
+                for (int i = lineStart; i < limit; i++) {
+                    if (window.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                boolean atFileEnd = windowStart + limit >= size;
+                if (newline < 0 && !atFileEnd && (windowStart != position || length < Integer.MAX_VALUE)) {
+                    // The line runs past this window; map a window starting at the line, growing it if needed
+                    if (windowStart == position) {
+                        length = Math.min(Integer.MAX_VALUE, length * 2);
+                    }
+                    window = null;
+                    continue;
+                }
+                int lineEnd = newline >= 0 ? newline : limit;
+                int contentEnd = lineEnd;
+                if (contentEnd > lineStart && window.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                long nextPosition = windowStart + (newline >= 0 ? newline + 1 : limit);
+                action.accept(new LogRecord(window, lineStart, contentEnd - lineStart, position, nextPosition));
+                position = nextPosition;
+                return true;
+            }
+        }
+
+        @Override
+        public Spliterator<LogRecord> trySplit() {
+            if (end - position < MIN_SPLIT_SIZE) {
+                return null;
+            }
+            long split = lineStartAtOrAfter(position + (end - position) / 2);
+            if (split <= position || split >= end) {
+                return null;
+            }
+            LineSpliterator prefix = new LineSpliterator(position, split);
+            position = split;
+            window = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Rough guess of 64 bytes per line
+            return Math.max(0, (end - position) / 64);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Metrics class is the registry of counters and latency histograms for station, queue and log operations.
+ * Counters are LongAdders and histograms are LatencyHistograms, so recording never takes a lock;
+ * callers look their metric up once and keep it in a static field, leaving only the increment on the hot path.
+ * Snapshots are available over JMX (ChargingStation:type=Metrics) and as a text dump that can be
+ * written to a file periodically.
+ *
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+final class Metrics implements MetricsMXBean {
+    static final String OBJECT_NAME = "ChargingStation:type=Metrics";
+
+    private static final Metrics instance = new Metrics();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+    private static ScheduledFuture<?> dumpTask;
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. Calling it again does nothing.
+     */
+    public static synchronized void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(instance, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the file with the text dump every period, replacing an earlier schedule. A period of 0 stops dumping.
+     */
+    public static synchronized void startPeriodicDump(String fileName, long periodMillis) {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+        if (periodMillis <= 0) {
+            return;
+        }
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        dumpTask = dumper.scheduleAtFixedRate(() -> writeDump(fileName), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the text dump to the file through a temporary file, so readers never see half a dump.
+     */
+    public static void writeDump(String fileName) {
+        File file = new File(fileName);
+        File temp = new File(fileName + ".tmp");
+        try (Writer writer = new FileWriter(temp)) {
+            writer.write(instance.dump());
+        } catch (IOException e) {
+            System.err.println("Error writing metrics dump: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics dump: " + e.getMessage());
+        }
+    }
+
+    public static Metrics get() {
+        return instance;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        Map<String, String> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, histogram.snapshot().toString()));
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append("# metrics at ").append(LogClock.currentTime()).append('\n');
+        getCounters().forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+        getLatencies().forEach((name, summary) -> text.append(name).append(' ').append(summary).append('\n'));
+        return text.toString();
+    }
+
+    @Override
+    public void reset() {
+        counters.values().forEach(LongAdder::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
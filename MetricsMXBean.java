@@ -0,0 +1,17 @@
+/**
+ * MetricsMXBean interface is the JMX view of Metrics, registered as ChargingStation:type=Metrics.
+ * Latency summaries are one line per operation with count, mean and percentiles in microseconds.
+ *
+ */
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, String> getLatencies();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,97 @@
+/**
+ * SlotTable class holds the owner of every timeslot of a charging station.
+ * Each slot is claimed and released with an atomic compare-and-set on its own entry, so a slot can never be
+ * booked twice and readers never lock. ChargingStation makes these changes under a per-slot lock.
+ * Owners are stored as UserRegistry ids with the booking's admin flag ((id + 1) * 2 + admin, 0 for a free slot),
+ * four bytes per slot.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class SlotTable {
+    private final int[] slotTimes;
+    private final AtomicIntegerArray owners;
+    private final UserRegistry registry = UserRegistry.get();
+
+    public SlotTable(int[] slotTimes) {
+        this.slotTimes = slotTimes.clone();
+        Arrays.sort(this.slotTimes);
+        this.owners = new AtomicIntegerArray(this.slotTimes.length);
+    }
+
+    public int size() {
+        return slotTimes.length;
+    }
+
+    public int timeAt(int index) {
+        return slotTimes[index];
+    }
+
+    /**
+     * Returns the index of the slot starting at the given time (e.g. 930), or -1 if there is none.
+     */
+    public int indexOf(int slotTime) {
+        int index = Arrays.binarySearch(slotTimes, slotTime);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the slot's owner with the admin flag they booked it with, or null if the slot is free.
+     */
+    public User ownerAt(int index) {
+        int owner = owners.get(index);
+        return owner == 0 ? null : registry.user((owner >>> 1) - 1, (owner & 1) != 0);
+    }
+
+    /**
+     * Returns the registry id of the slot's owner, or -1 if the slot is free.
+     */
+    public int ownerIdAt(int index) {
+        return (owners.get(index) >>> 1) - 1;
+    }
+
+    public boolean isFree(int index) {
+        return owners.get(index) == 0;
+    }
+
+    /**
+     * Claims a free slot for the user. Only one of any number of racing callers succeeds.
+     */
+    public boolean claim(int index, User user) {
+        return claim(index, registry.intern(user), user.isAdmin);
+    }
+
+    public boolean claim(int index, int userId, boolean isAdmin) {
+        return owners.compareAndSet(index, 0, ((userId + 1) << 1) | (isAdmin ? 1 : 0));
+    }
+
+    /**
+     * Releases a slot if it is currently held by a user with the same username.
+     */
+    public boolean release(int index, User user) {
+        int userId = user.id >= 0 ? user.id : registry.idOf(user.username);
+        return userId >= 0 && release(index, userId);
+    }
+
+    public boolean release(int index, int userId) {
+        int owner = owners.get(index);
+        while ((owner >>> 1) == userId + 1) {
+            if (owners.compareAndSet(index, owner, 0)) {
+                return true;
+            }
+            owner = owners.get(index);
+        }
+        return false;
+    }
+
+    /**
+     * Frees every slot. Only meant for reloading state, not for use while bookings are running.
+     */
+    public void clear() {
+        for (int i = 0; i < owners.length(); i++) {
+            owners.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * StationCluster class is a registry for a fleet of charging stations in one JVM.
+ * Stations are sharded by id across single-threaded worker executors: every task for a station runs
+ * on its shard's thread, and each station keeps its own state file (and journal) in the state directory,
+ * e.g. src/stations/Station7_state.text. All stations keep their availability in one shared
+ * TimeslotCalendar, one row each, so a query over a group of stations reads the calendar's
+ * "which stations are free at this slot" bitsets instead of asking every station.
+ * Stations start from their startup image when it is up to date, and warmUp() loads a whole fleet with
+ * every shard working in parallel; shutdown() writes the images for the next start.
+ *
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class StationCluster {
+    static final int DEFAULT_MAX_STATIONS = 1024;
+
+    private final String stateDirectory;
+    private final BookingJournal.FsyncPolicy fsyncPolicy;
+    private final ExecutorService[] shards;
+    private final Map<String, ChargingStation> stations = new ConcurrentHashMap<>();
+    // The load of every station ever registered, so a station racing registrations is loaded once, on one calendar row
+    private final Map<String, CompletableFuture<ChargingStation>> loads = new ConcurrentHashMap<>();
+    // Availability of every station of the cluster, row i belonging to the i-th station loaded
+    private final TimeslotCalendar calendar;
+    private final AtomicInteger nextCalendarRow = new AtomicInteger();
+
+    /**
+     * Creates a cluster with the given number of shards. With an fsyncPolicy each station journals its
+     * bookings; with null it saves to its text state file only.
+     */
+    public StationCluster(int shardCount, String stateDirectory, BookingJournal.FsyncPolicy fsyncPolicy) {
+        this(shardCount, stateDirectory, fsyncPolicy, DEFAULT_MAX_STATIONS);
+    }
+
+    /**
+     * Creates a cluster that holds at most maxStations stations, the number of rows of its shared calendar.
+     */
+    public StationCluster(int shardCount, String stateDirectory, BookingJournal.FsyncPolicy fsyncPolicy, int maxStations) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("A cluster needs at least one shard.");
+        }
+        if (maxStations <= 0) {
+            throw new IllegalArgumentException("A cluster needs room for at least one station.");
+        }
+        this.calendar = new TimeslotCalendar(maxStations, 1);
+        this.stateDirectory = stateDirectory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String name = "station-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        new File(stateDirectory).mkdirs();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(String stationId) {
+        return Math.floorMod(stationId.hashCode(), shards.length);
+    }
+
+    /**
+     * Returns the state file a station of this cluster uses, e.g. src/stations/Station7_state.text.
+     */
+    public String stateFileOf(String stationId) {
+        return new File(stateDirectory, stationId.replaceAll("[^A-Za-z0-9_-]", "_") + "_state.text").getPath();
+    }
+
+    /**
+     * Registers a station and loads its saved state on its shard, or returns the station if it is already registered.
+     * Throws IllegalStateException if the cluster already holds its maximum number of stations.
+     */
+    public ChargingStation register(String stationId) {
+        ChargingStation existing = stations.get(stationId);
+        if (existing != null) {
+            return existing;
+        }
+        return loadAsync(stationId).join();
+    }
+
+    /**
+     * Registers many stations at once, each shard loading its own stations in parallel with the others.
+     * Stations with an up-to-date startup image only map its header, so their availability is served at once;
+     * with hydrate their bookings and queues are read before this returns, otherwise on first use.
+     * Prints how long each phase took. Throws IllegalStateException if the stations do not fit in the cluster.
+     */
+    public void warmUp(Collection<String> stationIds, boolean hydrate) {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<ChargingStation>> loading = new LinkedHashMap<>();
+        for (String stationId : stationIds) {
+            if (!stations.containsKey(stationId)) {
+                loading.put(stationId, loadAsync(stationId));
+            }
+        }
+        int fromImage = 0;
+        for (CompletableFuture<ChargingStation> station : loading.values()) {
+            if (!station.join().isHydrated()) {
+                fromImage++;
+            }
+        }
+        long available = System.nanoTime();
+
+        if (hydrate) {
+            List<CompletableFuture<Void>> hydrating = new ArrayList<>();
+            for (String stationId : loading.keySet()) {
+                ChargingStation station = stations.get(stationId);
+                hydrating.add(CompletableFuture.runAsync(station::hydrate, shards[shardOf(stationId)]));
+            }
+            for (CompletableFuture<Void> station : hydrating) {
+                station.join();
+            }
+        }
+        long end = System.nanoTime();
+        System.out.printf("Warmed up %d stations (%d from startup images) on %d shards: availability after %.1f ms, %s%n",
+                loading.size(), fromImage, shards.length, (available - start) / 1e6,
+                hydrate ? String.format("hydrated after %.1f ms", (end - start) / 1e6) : "hydrating on first use");
+    }
+
+    /**
+     * Starts loading the station on its shard unless it is loaded or loading already. The calendar row is
+     * only taken by the call that starts the load, so racing registrations never fill a row that is thrown away.
+     */
+    private CompletableFuture<ChargingStation> loadAsync(String stationId) {
+        return loads.computeIfAbsent(stationId, id -> {
+            int row = nextCalendarRow();
+            return CompletableFuture.supplyAsync(() -> {
+                ChargingStation station = load(id, row);
+                stations.put(id, station);
+                return station;
+            }, shards[shardOf(id)]);
+        });
+    }
+
+    private int nextCalendarRow() {
+        int row = nextCalendarRow.getAndIncrement();
+        if (row >= calendar.getStations()) {
+            throw new IllegalStateException("The cluster is full: it holds at most " + calendar.getStations() + " stations.");
+        }
+        return row;
+    }
+
+    private ChargingStation load(String stationId, int row) {
+        ChargingStation station = new ChargingStation(stationId, stateFileOf(stationId), calendar, row);
+        if (fsyncPolicy != null) {
+            station.openJournal(fsyncPolicy);
+        }
+        if (!station.loadStartupImage()
+                && (new File(station.stateFile).exists() || (station.journal != null && station.journal.exists()))) {
+            station.loadStateFromFile();
+        }
+        return station;
+    }
+
+    public ChargingStation get(String stationId) {
+        return stations.get(stationId);
+    }
+
+    public Collection<String> getStationIds() {
+        return new ArrayList<>(stations.keySet());
+    }
+
+    /**
+     * Runs a task against one station on that station's shard thread.
+     */
+    public <T> CompletableFuture<T> submit(String stationId, Function<ChargingStation, T> task) {
+        ChargingStation station = stations.get(stationId);
+        if (station == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Unknown station " + stationId));
+            return failed;
+        }
+        return CompletableFuture.supplyAsync(() -> task.apply(station), shards[shardOf(stationId)]);
+    }
+
+    /**
+     * Returns the earliest free timeslot at or after fromTime (e.g. 930) at any station of the group,
+     * or null if they are all full. Walks the slots in time order and checks the stations free at each
+     * slot against the group; ties go to the station id that sorts first. Unknown station ids are ignored.
+     * Runs on the calling thread: the shared calendar answers for every station at once, so the query
+     * neither fans out to the shards nor waits behind the bookings queued on them.
+     */
+    public FreeSlot earliestFreeSlot(Collection<String> group, int fromTime) {
+        String[] groupRows = new String[calendar.getStations()];
+        boolean any = false;
+        for (String stationId : group) {
+            ChargingStation station = stations.get(stationId);
+            if (station != null) {
+                groupRows[station.calendarRow] = station.stationId;
+                any = true;
+            }
+        }
+        int start = firstSlotAtOrAfter(calendar, fromTime);
+        if (!any || start < 0) {
+            return null;
+        }
+
+        for (int slot = start; slot < calendar.getSlotsPerDay(); slot++) {
+            String best = null;
+            for (int row : calendar.stationsFreeAt(0, slot)) {
+                String stationId = groupRows[row];
+                if (stationId != null && (best == null || stationId.compareTo(best) < 0)) {
+                    best = stationId;
+                }
+            }
+            if (best != null) {
+                return new FreeSlot(best, calendar.timeOf(slot));
+            }
+        }
+        return null;
+    }
+
+    private static int firstSlotAtOrAfter(TimeslotCalendar calendar, int time) {
+        int low = 0;
+        int high = calendar.getSlotsPerDay();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (calendar.timeOf(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < calendar.getSlotsPerDay() ? low : -1;
+    }
+
+    /**
+     * Saves every station on its shard (including saves still waiting out their delay), closes the journals, writes the startup images and stops the shard threads.
+     */
+    public void shutdown() {
+        List<CompletableFuture<Void>> saved = new ArrayList<>();
+        for (ChargingStation station : stations.values()) {
+            saved.add(CompletableFuture.runAsync(() -> {
+                station.flushPendingSave();
+                station.saveStateToFile();
+                station.closeJournal();
+                // Written last, so the image is newer than the state it was taken from
+                station.saveStartupImage();
+            }, shards[shardOf(station.stationId)]));
+        }
+        for (CompletableFuture<Void> save : saved) {
+            save.join();
+        }
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        for (ExecutorService shard : shards) {
+            try {
+                shard.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A free timeslot (e.g. 930) at one station.
+     */
+    static final class FreeSlot {
+        final String stationId;
+        final int timeslot;
+
+        FreeSlot(String stationId, int timeslot) {
+            this.stationId = stationId;
+            this.timeslot = timeslot;
+        }
+
+        @Override
+        public String toString() {
+            return stationId + "@" + timeslot;
+        }
+    }
+}
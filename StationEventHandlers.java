@@ -0,0 +1,118 @@
+/**
+ * StationEventHandlers class holds the EventBus consumers for station events:
+ * logging writes the station, energy and system logs and the typed event log,
+ * metrics counts the events by kind and energy source, and persistence saves every station
+ * without a journal that changed once per batch. Each runs on its own consumer thread, off the booking thread.
+ *
+ */
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+class StationEventHandlers {
+
+    private StationEventHandlers() {
+    }
+
+    /**
+     * Writes each event as a line of the matching text log (using the station's time ranges, found
+     * through the lookup) and to the typed event log.
+     */
+    static EventBus.EventHandler logging(Function<String, ChargingStation> stations) {
+        return (event, sequence, endOfBatch) -> {
+            ChargingStation station = event instanceof BookingEvent ? stations.apply(((BookingEvent) event).stationId) : null;
+            log(event, station);
+        };
+    }
+
+    /**
+     * Writes one event to its text log and to the typed event log. The station, if known, renders the time ranges.
+     * Also used by a station to log an event itself when the bus could not take it.
+     */
+    static void log(LogEvent event, ChargingStation station) {
+        if (event instanceof BookingEvent) {
+            BookingEvent booking = (BookingEvent) event;
+            String timeRange = station != null ? station.getTimeRange(booking.slot) : String.valueOf(booking.slot);
+            String message;
+            switch (booking.action) {
+                case CANCELED:
+                    message = booking.username + " canceled timeslot " + timeRange;
+                    break;
+                case REBOOKED:
+                    String previous = station != null ? station.getTimeRange(booking.previousSlot) : String.valueOf(booking.previousSlot);
+                    message = booking.username + " rebooked timeslot " + timeRange + " instead of " + previous;
+                    break;
+                case BOOKED:
+                default:
+                    message = booking.username + " booked timeslot " + timeRange;
+                    break;
+            }
+            LogManager.createLog(LogManager.stationLog, message + " at " + LogClock.currentTime());
+        } else if (event instanceof EnergySelectionEvent) {
+            EnergySelectionEvent selection = (EnergySelectionEvent) event;
+            LogManager.logEnergySources(selection.slot, selection.getSources());
+        } else if (event instanceof SystemEvent) {
+            LogManager.createLog(LogManager.systemLog, ((SystemEvent) event).message);
+        }
+        LogManager.writeEvent(event);
+    }
+
+    /**
+     * Counts bookings, cancellations and rebookings, and energy selections per source, in Metrics.
+     */
+    static EventBus.EventHandler metrics() {
+        LongAdder booked = Metrics.counter("events.booked");
+        LongAdder canceled = Metrics.counter("events.canceled");
+        LongAdder rebooked = Metrics.counter("events.rebooked");
+        LongAdder system = Metrics.counter("events.system");
+        return (event, sequence, endOfBatch) -> {
+            if (event instanceof BookingEvent) {
+                switch (((BookingEvent) event).action) {
+                    case CANCELED:
+                        canceled.increment();
+                        break;
+                    case REBOOKED:
+                        rebooked.increment();
+                        break;
+                    case BOOKED:
+                    default:
+                        booked.increment();
+                        break;
+                }
+            } else if (event instanceof EnergySelectionEvent) {
+                List<String> sources = ((EnergySelectionEvent) event).getSources();
+                for (String source : sources) {
+                    Metrics.counter("events.energySelected." + source).increment();
+                }
+            } else if (event instanceof SystemEvent) {
+                system.increment();
+            }
+        };
+    }
+
+    /**
+     * Saves the state of every station with a booking event in the batch, once, at the end of the batch.
+     * A burst of bookings is saved together, the same way a save delay would save it. Stations with a journal
+     * are skipped: every change is already appended to it, and saving would checkpoint the journal each batch.
+     */
+    static EventBus.EventHandler persistence(Function<String, ChargingStation> stations) {
+        Set<String> changed = new LinkedHashSet<>();
+        return (event, sequence, endOfBatch) -> {
+            if (event instanceof BookingEvent) {
+                changed.add(((BookingEvent) event).stationId);
+            }
+            if (endOfBatch && !changed.isEmpty()) {
+                for (String stationId : changed) {
+                    ChargingStation station = stations.apply(stationId);
+                    if (station != null && station.journal == null) {
+                        station.saveStateToFile();
+                    }
+                }
+                changed.clear();
+            }
+        };
+    }
+}
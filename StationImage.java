@@ -0,0 +1,196 @@
+/**
+ * StationImage class is a binary startup image of one charging station, written at shutdown and
+ * memory-mapped at startup. The header holds a bitmap of the booked slots, so availability can be served
+ * as soon as the header is mapped and checked; the bookings and the queue follow in a detail section
+ * that is only decoded when the station is first used.
+ * Layout: magic, slotsPerDay, detail length, detail CRC, booked-slot bitmap words, header CRC, detail.
+ * The detail section is the station id, the bookings (slot index, username, admin flag) and the queue in service order.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+final class StationImage {
+    static final int MAGIC = 0x43534931; // "CSI1"
+
+    /**
+     * Receives the detail section when the image is hydrated.
+     */
+    interface Hydration {
+        void stationId(String stationId);
+
+        void booked(int slotIndex, String username, boolean isAdmin);
+
+        void queued(String username, boolean isAdmin);
+    }
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final long[] bookedWords;
+    private final int detailOffset;
+    private final int detailLength;
+    private final int detailCrc;
+
+    private StationImage(File file, MappedByteBuffer buffer, long[] bookedWords, int detailOffset, int detailLength, int detailCrc) {
+        this.file = file;
+        this.buffer = buffer;
+        this.bookedWords = bookedWords;
+        this.detailOffset = detailOffset;
+        this.detailLength = detailLength;
+        this.detailCrc = detailCrc;
+    }
+
+    /**
+     * Writes the image of a station to a temporary file and renames it over the given file.
+     */
+    static void write(File file, String stationId, SlotTable slotTable, List<User> queue) throws IOException {
+        int slots = slotTable.size();
+        long[] bookedWords = new long[(slots + 63) >>> 6];
+        ByteArrayOutputStream detailBytes = new ByteArrayOutputStream();
+        DataOutputStream detail = new DataOutputStream(detailBytes);
+        detail.writeUTF(stationId);
+        // Take one pass over the table; the owners are read once so bitmap and bookings agree
+        int[] indexes = new int[slots];
+        User[] owners = new User[slots];
+        int count = 0;
+        for (int i = 0; i < slots; i++) {
+            User owner = slotTable.ownerAt(i);
+            if (owner != null) {
+                bookedWords[i >>> 6] |= 1L << i;
+                indexes[count] = i;
+                owners[count++] = owner;
+            }
+        }
+        detail.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            detail.writeInt(indexes[i]);
+            detail.writeUTF(owners[i].username);
+            detail.writeBoolean(owners[i].isAdmin);
+        }
+        detail.writeInt(queue.size());
+        for (User user : queue) {
+            detail.writeUTF(user.username);
+            detail.writeBoolean(user.isAdmin);
+        }
+        detail.flush();
+        byte[] detailContent = detailBytes.toByteArray();
+
+        ByteBuffer header = ByteBuffer.allocate(16 + bookedWords.length * 8 + 4);
+        header.putInt(MAGIC).putInt(slots).putInt(detailContent.length).putInt(crcOf(detailContent, 0, detailContent.length));
+        for (long word : bookedWords) {
+            header.putLong(word);
+        }
+        header.putInt(crcOf(header.array(), 0, header.position()));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(header.array());
+            out.write(detailContent);
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps an image and checks its header. Only the header is read; the detail section is checked on hydrate().
+     */
+    static StationImage map(File file, int slotsPerDay) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int words = (slotsPerDay + 63) >>> 6;
+        int headerLength = 16 + words * 8;
+        if (buffer.capacity() < headerLength + 4 || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a station image.");
+        }
+        if (buffer.getInt(4) != slotsPerDay) {
+            throw new IOException(file + " has " + buffer.getInt(4) + " slots per day instead of " + slotsPerDay + ".");
+        }
+        byte[] header = new byte[headerLength];
+        buffer.get(0, header);
+        if (crcOf(header, 0, headerLength) != buffer.getInt(headerLength)) {
+            throw new IOException("Station image " + file + " has a damaged header.");
+        }
+        int detailLength = buffer.getInt(8);
+        int detailOffset = headerLength + 4;
+        if (detailLength < 0 || (long) detailOffset + detailLength != buffer.capacity()) {
+            throw new IOException("Station image " + file + " is cut short.");
+        }
+        long[] bookedWords = new long[words];
+        for (int i = 0; i < words; i++) {
+            bookedWords[i] = buffer.getLong(16 + i * 8);
+        }
+        return new StationImage(file, buffer, bookedWords, detailOffset, detailLength, buffer.getInt(12));
+    }
+
+    public boolean isBooked(int slotIndex) {
+        return (bookedWords[slotIndex >>> 6] & (1L << slotIndex)) != 0;
+    }
+
+    /**
+     * Checks and decodes the detail section, then hands it to the hydration. Nothing is handed over
+     * if the section is damaged.
+     */
+    public void hydrate(Hydration hydration) throws IOException {
+        byte[] detail = new byte[detailLength];
+        buffer.get(detailOffset, detail);
+        if (crcOf(detail, 0, detail.length) != detailCrc) {
+            throw new IOException("Station image " + file + " has a damaged detail section.");
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(detail));
+        String stationId = data.readUTF();
+        int count = data.readInt();
+        int[] indexes = new int[count];
+        String[] owners = new String[count];
+        boolean[] admins = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = data.readInt();
+            owners[i] = data.readUTF();
+            admins[i] = data.readBoolean();
+            if (indexes[i] < 0 || !isBooked(indexes[i])) {
+                throw new IOException("Station image " + file + " books slot " + indexes[i] + " outside its bitmap.");
+            }
+        }
+        int queued = data.readInt();
+        List<String> waiting = new ArrayList<>(queued);
+        List<Boolean> waitingAdmins = new ArrayList<>(queued);
+        for (int i = 0; i < queued; i++) {
+            waiting.add(data.readUTF());
+            waitingAdmins.add(data.readBoolean());
+        }
+
+        hydration.stationId(stationId);
+        for (int i = 0; i < count; i++) {
+            hydration.booked(indexes[i], owners[i], admins[i]);
+        }
+        for (int i = 0; i < queued; i++) {
+            hydration.queued(waiting.get(i), waitingAdmins.get(i));
+        }
+    }
+
+    private static int crcOf(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * SystemEvent class records a message about the system as a whole, e.g. "System updated successfully".
+ *
+ */
+
+class SystemEvent extends LogEvent {
+    final String message;
+
+    public SystemEvent(long timestampMillis, String message) {
+        super(timestampMillis);
+        this.message = message;
+    }
+
+    public static SystemEvent of(String message) {
+        return new SystemEvent(System.currentTimeMillis(), message);
+    }
+
+    @Override
+    byte type() {
+        return SYSTEM;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * TimeslotCalendar class stores timeslot availability for many stations over many days as primitive bitsets.
+ * A set bit means the slot is free. Bits are laid out per (station, day), so "next free slot" questions
+ * are answered with word-level scans, and a second, transposed bitset per (day, slot) answers
+ * "which stations are free at this time" without looking at every station.
+ * All updates are atomic on the underlying words, so the calendar can be shared between threads.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class TimeslotCalendar {
+    // Business hours from 9:00 to 17:00 with 30-minute slots, the last slot starting at 17:00
+    static final int DEFAULT_DAY_START_MINUTES = 9 * 60;
+    static final int DEFAULT_SLOT_MINUTES = 30;
+    static final int DEFAULT_SLOTS_PER_DAY = 17;
+
+    private final int stations;
+    private final int days;
+    private final int dayStartMinutes;
+    private final int slotMinutes;
+    private final int slotsPerDay;
+    private final int wordsPerDay;
+    private final int wordsPerSlot;
+
+    // Free slots: (station * days + day) * wordsPerDay + slot / 64
+    private final AtomicLongArray slotBits;
+    // Free stations: (day * slotsPerDay + slot) * wordsPerSlot + station / 64
+    private final AtomicLongArray stationBits;
+
+    public TimeslotCalendar(int stations, int days) {
+        this(stations, days, DEFAULT_DAY_START_MINUTES, DEFAULT_SLOT_MINUTES, DEFAULT_SLOTS_PER_DAY);
+    }
+
+    public TimeslotCalendar(int stations, int days, int dayStartMinutes, int slotMinutes, int slotsPerDay) {
+        if (stations <= 0 || days <= 0 || slotMinutes <= 0 || slotsPerDay <= 0
+                || dayStartMinutes + (slotsPerDay - 1) * slotMinutes >= 24 * 60) {
+            throw new IllegalArgumentException("Invalid calendar dimensions.");
+        }
+        this.stations = stations;
+        this.days = days;
+        this.dayStartMinutes = dayStartMinutes;
+        this.slotMinutes = slotMinutes;
+        this.slotsPerDay = slotsPerDay;
+        this.wordsPerDay = (slotsPerDay + 63) >>> 6;
+        this.wordsPerSlot = (stations + 63) >>> 6;
+        this.slotBits = new AtomicLongArray(stations * days * wordsPerDay);
+        this.stationBits = new AtomicLongArray(days * slotsPerDay * wordsPerSlot);
+
+        // Everything starts out free
+        for (int i = 0; i < stations * days; i++) {
+            fillWords(slotBits, i * wordsPerDay, slotsPerDay);
+        }
+        for (int i = 0; i < days * slotsPerDay; i++) {
+            fillWords(stationBits, i * wordsPerSlot, stations);
+        }
+    }
+
+    public int getStations() {
+        return stations;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public int getSlotsPerDay() {
+        return slotsPerDay;
+    }
+
+    /**
+     * Returns the start time of a slot in HHMM form, e.g. slot 1 of the default day is 930.
+     */
+    public int timeOf(int slot) {
+        int minutes = dayStartMinutes + slot * slotMinutes;
+        return (minutes / 60) * 100 + minutes % 60;
+    }
+
+    /**
+     * Returns the slot index starting at the given HHMM time, or -1 if no slot starts then.
+     */
+    public int slotOf(int time) {
+        int minutes = (time / 100) * 60 + time % 100 - dayStartMinutes;
+        if (time < 0 || time % 100 >= 60 || minutes < 0 || minutes % slotMinutes != 0) {
+            return -1;
+        }
+        int slot = minutes / slotMinutes;
+        return slot < slotsPerDay ? slot : -1;
+    }
+
+    /**
+     * Returns the start times of all slots of one day in HHMM form.
+     */
+    public int[] slotTimes() {
+        int[] times = new int[slotsPerDay];
+        for (int slot = 0; slot < slotsPerDay; slot++) {
+            times[slot] = timeOf(slot);
+        }
+        return times;
+    }
+
+    public String getTimeRange(int slot) {
+        int start = dayStartMinutes + slot * slotMinutes;
+        int end = start + slotMinutes;
+        return String.format("%02d:%02d AM - %02d:%02d AM", start / 60, start % 60, end / 60, end % 60);
+    }
+
+    public boolean isFree(int station, int day, int slot) {
+        return (slotBits.get(slotWord(station, day, slot)) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Marks a slot as booked. Returns false if it was already booked.
+     */
+    public boolean markBooked(int station, int day, int slot) {
+        if (!clearBit(slotBits, slotWord(station, day, slot), 1L << slot)) {
+            return false;
+        }
+        clearBit(stationBits, stationWord(day, slot, station), 1L << station);
+        return true;
+    }
+
+    /**
+     * Marks a slot as free again. Returns false if it was already free.
+     */
+    public boolean markFree(int station, int day, int slot) {
+        if (!setBit(slotBits, slotWord(station, day, slot), 1L << slot)) {
+            return false;
+        }
+        setBit(stationBits, stationWord(day, slot, station), 1L << station);
+        return true;
+    }
+
+    public int freeCount(int station, int day) {
+        int count = 0;
+        int base = (station * days + day) * wordsPerDay;
+        for (int w = 0; w < wordsPerDay; w++) {
+            count += Long.bitCount(slotBits.get(base + w));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first free slot at or after (day, slot), searching later days if needed,
+     * as a position day * slotsPerDay + slot, or -1 if the station is full until the end of the horizon.
+     */
+    public int firstFreeAfter(int station, int day, int slot) {
+        for (int d = day; d < days; d++) {
+            int found = nextSetBit(station, d, d == day ? slot : 0);
+            if (found >= 0) {
+                return d * slotsPerDay + found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns up to n free positions (day * slotsPerDay + slot) at or after (day, slot), in time order.
+     */
+    public int[] nextFreeSlots(int station, int day, int slot, int n) {
+        int[] result = new int[Math.max(0, n)];
+        int count = 0;
+        for (int d = day; d < days && count < n; d++) {
+            int found = nextSetBit(station, d, d == day ? slot : 0);
+            while (found >= 0 && count < n) {
+                result[count++] = d * slotsPerDay + found;
+                found = nextSetBit(station, d, found + 1);
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the ids of all stations that are free at the given day and slot, in ascending order.
+     */
+    public int[] stationsFreeAt(int day, int slot) {
+        int base = (day * slotsPerDay + slot) * wordsPerSlot;
+        int total = 0;
+        for (int w = 0; w < wordsPerSlot; w++) {
+            total += Long.bitCount(stationBits.get(base + w));
+        }
+        int[] result = new int[total];
+        int count = 0;
+        for (int w = 0; w < wordsPerSlot && count < total; w++) {
+            long word = stationBits.get(base + w);
+            while (word != 0 && count < total) {
+                result[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return count == total ? result : Arrays.copyOf(result, count);
+    }
+
+    private int nextSetBit(int station, int day, int fromSlot) {
+        if (fromSlot >= slotsPerDay) {
+            return -1;
+        }
+        int base = (station * days + day) * wordsPerDay;
+        int w = fromSlot >>> 6;
+        long word = slotBits.get(base + w) & (-1L << fromSlot);
+        while (true) {
+            if (word != 0) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(word);
+                return slot < slotsPerDay ? slot : -1;
+            }
+            if (++w == wordsPerDay) {
+                return -1;
+            }
+            word = slotBits.get(base + w);
+        }
+    }
+
+    private int slotWord(int station, int day, int slot) {
+        checkPosition(station, day, slot);
+        return (station * days + day) * wordsPerDay + (slot >>> 6);
+    }
+
+    private int stationWord(int day, int slot, int station) {
+        return (day * slotsPerDay + slot) * wordsPerSlot + (station >>> 6);
+    }
+
+    private void checkPosition(int station, int day, int slot) {
+        if (station < 0 || station >= stations || day < 0 || day >= days || slot < 0 || slot >= slotsPerDay) {
+            throw new IndexOutOfBoundsException("No slot " + slot + " on day " + day + " at station " + station);
+        }
+    }
+
+    private static void fillWords(AtomicLongArray words, int base, int bits) {
+        for (int w = 0; bits > 0; w++, bits -= 64) {
+            words.set(base + w, bits >= 64 ? -1L : (1L << bits) - 1);
+        }
+    }
+
+    private static boolean clearBit(AtomicLongArray words, int index, long mask) {
+        long current;
+        do {
+            current = words.get(index);
+            if ((current & mask) == 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, current, current & ~mask));
+        return true;
+    }
+
+    private static boolean setBit(AtomicLongArray words, int index, long mask) {
+        long current;
+        do {
+            current = words.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, current, current | mask));
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * UserRegistry class interns users by username to dense integer ids 0, 1, 2, ...
+ * There is one canonical User object per username, so users loaded from a state file or journal
+ * are the same objects the rest of the program sees, and bookings and queue entries can store a
+ * 4-byte id instead of a reference.
+ * Admin rights are not part of the identity: canonical users are never admins, and whoever stores
+ * an id keeps the admin flag of that booking or queue entry next to it.
+ * Ids are found with a primitive open-addressing table (linear probing over an int[] of id + 1,
+ * kept at most half full), so lookup by name is O(1) without boxing.
+ * Lookups are lock-free optimistic reads; only interning a new username takes the write lock.
+ * Users are published through an AtomicReferenceArray, so user(id) sees every user whose id it was given.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+final class UserRegistry {
+    private static final UserRegistry global = new UserRegistry();
+
+    private final StampedLock lock = new StampedLock();
+    // id + 1 of the user whose username hashes here, 0 for an empty entry
+    private int[] table = new int[64];
+    // Replaced by a larger copy when full; readers may hold the old array, which keeps every user it had
+    private volatile AtomicReferenceArray<User> users = new AtomicReferenceArray<>(32);
+    private int count;
+
+    /**
+     * Returns the registry shared by all stations and queues in this JVM.
+     */
+    static UserRegistry get() {
+        return global;
+    }
+
+    /**
+     * Returns the id of the username, adding it if it is new.
+     */
+    public int intern(String username) {
+        int id = idOf(username);
+        if (id >= 0) {
+            return id;
+        }
+        long stamp = lock.writeLock();
+        try {
+            id = find(table, users, username);
+            return id >= 0 ? id : add(new User(username, false));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the id of the user, interning them on first use and remembering the id on the object.
+     */
+    public int intern(User user) {
+        int id = user.id;
+        if (id >= 0) {
+            return id;
+        }
+        id = intern(user.username);
+        user.id = id;
+        return id;
+    }
+
+    /**
+     * Returns the id of the username, or -1 if it has never been interned.
+     */
+    public int idOf(String username) {
+        long stamp = lock.tryOptimisticRead();
+        int id = find(table, users, username);
+        if (lock.validate(stamp)) {
+            return id;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, users, username);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the canonical user for an id, or null if there is no such id.
+     */
+    public User user(int id) {
+        AtomicReferenceArray<User> current = users;
+        return id >= 0 && id < current.length() ? current.get(id) : null;
+    }
+
+    /**
+     * Returns the user for an id with the admin flag of one booking or queue entry: the canonical user,
+     * or for an admin a new User with the same username and id. Returns null if there is no such id.
+     */
+    public User user(int id, boolean isAdmin) {
+        User user = user(id);
+        if (user == null || !isAdmin) {
+            return user;
+        }
+        User admin = new User(user.username, true);
+        admin.id = id;
+        return admin;
+    }
+
+    /**
+     * Returns the user for the username with the given admin flag, interning the username if needed.
+     */
+    public User user(String username, boolean isAdmin) {
+        return user(intern(username), isAdmin);
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static int find(int[] table, AtomicReferenceArray<User> users, String username) {
+        int mask = table.length - 1;
+        int i = spread(username.hashCode()) & mask;
+        // Bounded so a read racing with a resize can never spin; validate() then retries it under the lock
+        for (int probes = 0; probes < table.length; probes++) {
+            int entry = table[i];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (id < users.length()) {
+                User user = users.get(id);
+                if (user != null && user.username.equals(username)) {
+                    return id;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int add(User user) {
+        int id = count;
+        AtomicReferenceArray<User> current = users;
+        if (id == current.length()) {
+            AtomicReferenceArray<User> resized = new AtomicReferenceArray<>(id * 2);
+            for (int i = 0; i < id; i++) {
+                resized.set(i, current.get(i));
+            }
+            current = resized;
+        }
+        user.id = id;
+        current.set(id, user);
+        users = current;
+        count++;
+        if (count * 2 > table.length) {
+            table = rehash(table.length * 2);
+        } else {
+            insert(table, user.username, id);
+        }
+        return id;
+    }
+
+    private int[] rehash(int capacity) {
+        int[] resized = new int[capacity];
+        for (int id = 0; id < count; id++) {
+            insert(resized, users.get(id).username, id);
+        }
+        return resized;
+    }
+
+    private static void insert(int[] table, String username, int id) {
+        int mask = table.length - 1;
+        int i = spread(username.hashCode()) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = id + 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,10 +1,12 @@
 /*The User class appears to represent a user in a system.
 username (Type: String) is to store the name or identifier of the user.
-isAdmin (Type: boolean) suggests whether the user has administrative privileges (true if the user is an admin, false otherwise).*/
+isAdmin (Type: boolean) suggests whether the user has administrative privileges (true if the user is an admin, false otherwise).
+id (Type: int) is the dense id the UserRegistry gave the user, or -1 until the user is interned.*/
 
 class User {
     String username;
     boolean isAdmin;
+    int id = -1;
 
     public User(String username, boolean isAdmin) {
         this.username = username;
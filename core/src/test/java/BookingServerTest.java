@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BookingServerTest {
+    @TempDir
+    Path stateDirectory;
+
+    private StationCluster cluster;
+    private BookingServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        cluster = new StationCluster(1, stateDirectory.toString(), null);
+        cluster.register("Station1");
+        server = new BookingServer(cluster, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        cluster.shutdown();
+    }
+
+    @Test
+    void cancelKeepsUserQueuedWhileTheyHoldAnotherBooking() throws Exception {
+        assertEquals(200, get("/book?station=Station1&user=Carla&slot=930").statusCode());
+        assertEquals(200, get("/book?station=Station1&user=Carla&slot=1000").statusCode());
+
+        assertEquals(200, get("/cancel?station=Station1&user=Carla&slot=930").statusCode());
+        assertEquals("{\"station\":\"Station1\",\"size\":1,\"head\":\"Carla\"}", get("/queue?station=Station1").body());
+
+        assertEquals(200, get("/cancel?station=Station1&user=Carla&slot=1000").statusCode());
+        assertEquals("{\"station\":\"Station1\",\"size\":0,\"head\":null}", get("/queue?station=Station1").body());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * BenchmarkFixtures class sets up the booking, queueing, persistence and logging hot paths for the JMH benchmarks.
+ * Each method prepares the code under test for one parameter value (slot count, queue size, user count, log size, ...)
+ * and returns the operation to measure. It is in the default package with the station classes; JMH benchmarks
+ * must be in a named package, so they reach these methods through benchmarks.Fixtures.
+ * Files are written to the directory in the benchmark.dir system property (default target/benchmark).
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+public class BenchmarkFixtures {
+    private static final File directory = new File(System.getProperty("benchmark.dir", "target/benchmark"));
+
+    // Results are stored here so the JIT cannot drop work done outside the measured operation
+    static volatile long sink;
+
+    private BenchmarkFixtures() {
+    }
+
+    public static LongSupplier tryBookCancel(long users) {
+        ChargingStation station = new ChargingStation("BenchStation", file("bench_state.text"));
+        User[] pool = users(users);
+        int[] slots = station.calendar.slotTimes();
+        Random random = new Random(1);
+        return () -> {
+            User user = pool[random.nextInt(pool.length)];
+            int slot = slots[random.nextInt(slots.length)];
+            // Book the slot if it is free, otherwise free it again, so the table stays half full
+            return station.tryBook(user, slot) ? 1 : station.cancel(station.slotTable.ownerAt(station.calendar.slotOf(slot)), slot) ? 2 : 0;
+        };
+    }
+
+    public static LongSupplier firstFreeSlot(long slots) {
+        int days = (int) (slots / TimeslotCalendar.DEFAULT_SLOTS_PER_DAY);
+        TimeslotCalendar calendar = new TimeslotCalendar(1, days);
+        // Everything is booked except the last slot of the horizon
+        for (int day = 0; day < days; day++) {
+            for (int slot = 0; slot < calendar.getSlotsPerDay(); slot++) {
+                calendar.markBooked(0, day, slot);
+            }
+        }
+        calendar.markFree(0, days - 1, calendar.getSlotsPerDay() - 1);
+        return () -> calendar.firstFreeAfter(0, 0, 0);
+    }
+
+    public static LongSupplier earliestFreeSlot(long stations) {
+        StationCluster cluster = new StationCluster(2, file("cluster" + stations), null);
+        List<String> group = new ArrayList<>();
+        for (int i = 0; i < stations; i++) {
+            group.add("BenchStation" + i);
+        }
+        cluster.warmUp(group, true);
+        // Every station is full until the afternoon, and only the last one has a free slot then
+        int[] slots = cluster.get(group.get(0)).calendar.slotTimes();
+        User user = new User("bench", false);
+        for (String stationId : group) {
+            ChargingStation station = cluster.get(stationId);
+            for (int slot : slots) {
+                if (slot < 1500 || !stationId.equals(group.get(group.size() - 1))) {
+                    station.tryBook(user, slot);
+                }
+            }
+        }
+        return () -> cluster.earliestFreeSlot(group, 900).timeslot;
+    }
+
+    public static LongSupplier availability(long bookedSlots) {
+        ChargingStation station = bookedStation(bookedSlots);
+        return () -> station.getAvailability().listing().length();
+    }
+
+    public static LongSupplier reoptimizeEnergy(long bookings) {
+        // A month of slots with Wh forecasts that leave some bookings without a source
+        int slots = TimeslotCalendar.DEFAULT_SLOTS_PER_DAY * 30;
+        EnergyAllocator allocator = new EnergyAllocator(new String[] {"Solar", "Wind", "Hydro"}, slots);
+        Random random = new Random(4);
+        for (int source = 0; source < 3; source++) {
+            int[] forecast = new int[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                forecast[slot] = random.nextInt(40_000);
+            }
+            allocator.setForecast(source, forecast);
+        }
+        int[] bookingSlots = new int[(int) bookings];
+        int[] demand = new int[bookingSlots.length];
+        int[] preferred = new int[bookingSlots.length];
+        for (int i = 0; i < bookingSlots.length; i++) {
+            bookingSlots[i] = random.nextInt(slots);
+            demand[i] = 5_000 + random.nextInt(20_000);
+            preferred[i] = random.nextInt(4) - 1;
+        }
+        int[] assignment = new int[bookingSlots.length];
+        return () -> allocator.reoptimize(bookingSlots, demand, preferred, assignment);
+    }
+
+    public static LongSupplier prioritize(long queueSize) {
+        ChargingQueue queue = new ChargingQueue();
+        User[] pool = users(queueSize);
+        for (User user : pool) {
+            queue.offer(user);
+        }
+        Random random = new Random(2);
+        return () -> queue.prioritize(pool[random.nextInt(pool.length)]) ? 1 : 0;
+    }
+
+    public static LongSupplier pollOffer(long queueSize) {
+        ChargingQueue queue = new ChargingQueue();
+        for (User user : users(queueSize)) {
+            queue.offer(user);
+        }
+        return () -> {
+            User user = queue.poll();
+            queue.offer(user);
+            return user.username.length();
+        };
+    }
+
+    /**
+     * Fills a queue (offering everyone twice, which must not grow it), moves every tenth user to the front
+     * as an admin would, and drains it.
+     */
+    public static LongSupplier fillPrioritizeDrain(long queueSize) {
+        User[] pool = users(queueSize);
+        return () -> {
+            ChargingQueue queue = new ChargingQueue();
+            for (User user : pool) {
+                queue.offer(user);
+            }
+            for (User user : pool) {
+                queue.offer(user);
+            }
+            for (int i = pool.length - 1; i >= 0; i -= 10) {
+                queue.prioritize(pool[i]);
+            }
+            long polled = 0;
+            while (queue.poll() != null) {
+                polled++;
+            }
+            return polled;
+        };
+    }
+
+    public static LongSupplier saveState(long bookedSlots) {
+        ChargingStation station = bookedStation(bookedSlots);
+        return () -> {
+            station.saveStateToFile();
+            return 1;
+        };
+    }
+
+    public static LongSupplier loadState(long bookedSlots) {
+        ChargingStation station = bookedStation(bookedSlots);
+        station.saveStateToFile();
+        return () -> {
+            station.loadStateFromFile();
+            return station.slotTable.size();
+        };
+    }
+
+    public static LongSupplier loadStartupImage(long bookedSlots) {
+        ChargingStation station = bookedStation(bookedSlots);
+        station.saveStateToFile();
+        station.saveStartupImage();
+        return () -> {
+            station.loadStartupImage();
+            station.hydrate();
+            return station.slotTable.size();
+        };
+    }
+
+    public static LongSupplier recordLatency(long maxNanos) {
+        LatencyHistogram histogram = new LatencyHistogram("bench");
+        Random random = new Random(3);
+        long[] values = new long[1024];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextInt((int) maxNanos);
+        }
+        int[] next = {0};
+        return () -> {
+            histogram.record(values[next[0]++ & 1023]);
+            return 1;
+        };
+    }
+
+    public static LongSupplier publishEvent(long capacity) {
+        EventBus bus = new EventBus("bench", (int) capacity, EventBus.WaitStrategy.YIELDING)
+                .subscribe("bench", (event, sequence, endOfBatch) -> sink = sequence)
+                .start();
+        BookingEvent event = BookingEvent.booked("BenchStation", new User("User0", false), 930);
+        return () -> bus.publish(event) ? 1 : 0;
+    }
+
+    public static LongSupplier createLog(long messageBytes) {
+        String logFile = file("bench_log.txt");
+        new File(logFile).delete();
+        String message = "x".repeat((int) messageBytes);
+        return () -> {
+            LogManager.createLog(logFile, message);
+            return 1;
+        };
+    }
+
+    public static LongSupplier loadEnergyLog(long logLines) {
+        String logFile = file("bench_energy_log.txt");
+        StringBuilder text = new StringBuilder();
+        String[] sources = {"Solar", "Wind", "Hydro"};
+        for (long i = 0; i < logLines; i++) {
+            text.append(LogClock.currentTime()).append(" : Timeslot ").append(900 + (i % 17) * 30)
+                    .append(" - Selected Energy Sources: ").append(sources[(int) (i % 3)]).append('\n');
+        }
+        try {
+            Files.write(new File(logFile).toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LogManager.flushLog(logFile);
+        return () -> LogManager.loadEnergyLogFromFile(logFile).size();
+    }
+
+    /**
+     * The timestamp formatting LogClock replaced: a new SimpleDateFormat and Date per call.
+     */
+    public static LongSupplier simpleDateFormat(long unused) {
+        return () -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()).length();
+    }
+
+    public static LongSupplier logClockCurrentTime(long unused) {
+        return () -> LogClock.currentTime().length();
+    }
+
+    public static LongSupplier logClockFormatTo(long unused) {
+        char[] buffer = new char[LogClock.LENGTH];
+        return () -> LogClock.formatTo(buffer, 0) + buffer[18];
+    }
+
+    /**
+     * Writes out the queued log lines and stops the log writers; called once a benchmark is done.
+     */
+    public static void shutdown() {
+        LogManager.shutdown();
+    }
+
+    private static ChargingStation bookedStation(long booked) {
+        ChargingStation station = new ChargingStation("BenchStation", file("bench_state.text"));
+        int[] slots = station.calendar.slotTimes();
+        for (int i = 0; i < booked && i < slots.length; i++) {
+            station.tryBook(new User("User" + i, i == 0), slots[i]);
+        }
+        return station;
+    }
+
+    private static User[] users(long count) {
+        User[] users = new User[(int) count];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new User("User" + i, i % 20 == 0);
+        }
+        return users;
+    }
+
+    private static String file(String name) {
+        directory.mkdirs();
+        return new File(directory, name).getPath();
+    }
+}
@@ -0,0 +1,25 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BenchmarkMain class runs the JMH benchmarks with the GC profiler (-prof gc) on unless other profilers are given,
+ * so every run reports the allocation rate next to throughput and latency percentiles.
+ * Build with mvn package and run with: java -jar jmh/target/benchmarks.jar [JMH options, e.g. Booking -p users=1000]
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
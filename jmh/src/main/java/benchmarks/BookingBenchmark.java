@@ -0,0 +1,135 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BookingBenchmark class measures booking and availability: tryBook/cancel by user count, the first free slot
+ * by calendar slot count, the earliest free slot of a cluster by station count, listing the free slots,
+ * and reassigning energy by booking count.
+ * Throughput and sampled latency percentiles are reported for every parameter value.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingBenchmark {
+
+    /**
+     * Books a random slot for a random user, or cancels it if it is taken, so the table stays half full.
+     */
+    @State(Scope.Thread)
+    public static class TryBookCancel {
+        @Param({"17", "1000", "100000"})
+        public long users;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("tryBookCancel", users);
+        }
+    }
+
+    @Benchmark
+    public long tryBookCancel(TryBookCancel state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * A calendar of the given number of slots with only the last one free.
+     */
+    @State(Scope.Thread)
+    public static class FirstFreeSlot {
+        @Param({"17", "510", "6205"})
+        public long slots;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("firstFreeSlot", slots);
+        }
+    }
+
+    @Benchmark
+    public long firstFreeSlot(FirstFreeSlot state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * A cluster where only the last station has a free slot, in the afternoon.
+     */
+    @State(Scope.Thread)
+    public static class EarliestFreeSlot {
+        @Param({"16", "1000"})
+        public long stations;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("earliestFreeSlot", stations);
+        }
+    }
+
+    @Benchmark
+    public long earliestFreeSlot(EarliestFreeSlot state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * The free-slot listing of a station with the given number of booked slots.
+     */
+    @State(Scope.Thread)
+    public static class Availability {
+        @Param({"1", "16"})
+        public long bookedSlots;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("availability", bookedSlots);
+        }
+    }
+
+    @Benchmark
+    public long availability(Availability state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Reassigns the energy of the given number of bookings over a month of slots.
+     */
+    @State(Scope.Thread)
+    public static class ReoptimizeEnergy {
+        @Param({"17", "5000"})
+        public long bookings;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("reoptimizeEnergy", bookings);
+        }
+    }
+
+    @Benchmark
+    public long reoptimizeEnergy(ReoptimizeEnergy state) {
+        return state.operation.getAsLong();
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixtures class looks up the setup methods of BenchmarkFixtures, which is in the default package with the
+ * station classes and so cannot be imported from here. Only setup goes through reflection; the measured
+ * operation is a plain LongSupplier call.
+ */
+final class Fixtures {
+    private static final String FIXTURES_CLASS = "BenchmarkFixtures";
+    // The stations print a line per save and load, which would flood the benchmark output
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private Fixtures() {
+    }
+
+    /**
+     * Runs the named setup method for one parameter value and returns the operation to measure.
+     * Standard output is discarded from then on in the benchmark JVM.
+     */
+    static LongSupplier prepare(String name, long param) {
+        System.setOut(QUIET);
+        try {
+            return (LongSupplier) Class.forName(FIXTURES_CLASS).getMethod(name, long.class).invoke(null, param);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Setting up " + name + " failed: " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No benchmark fixture " + name, e);
+        }
+    }
+
+    static void shutdown() {
+        try {
+            Class.forName(FIXTURES_CLASS).getMethod("shutdown").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Shutting down the benchmark fixtures failed", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LogClockBenchmark class compares the old timestamp formatting (a new SimpleDateFormat and Date per call)
+ * with LogClock's cached timestamp, as a String and copied into a char[].
+ * Run with -prof gc (the default in BenchmarkMain) to see the bytes allocated per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogClockBenchmark {
+    private LongSupplier simpleDateFormat;
+    private LongSupplier currentTime;
+    private LongSupplier formatTo;
+
+    @Setup
+    public void setUp() {
+        simpleDateFormat = Fixtures.prepare("simpleDateFormat", 0);
+        currentTime = Fixtures.prepare("logClockCurrentTime", 0);
+        formatTo = Fixtures.prepare("logClockFormatTo", 0);
+    }
+
+    @Benchmark
+    public long simpleDateFormatPerCall() {
+        return simpleDateFormat.getAsLong();
+    }
+
+    @Benchmark
+    public long logClockCurrentTime() {
+        return currentTime.getAsLong();
+    }
+
+    @Benchmark
+    public long logClockFormatTo() {
+        return formatTo.getAsLong();
+    }
+}
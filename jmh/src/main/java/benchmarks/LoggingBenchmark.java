@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LoggingBenchmark class measures the logging paths: queueing a log line by message size, reading the energy log
+ * by its number of lines, publishing to the event bus by ring capacity, and recording a latency by value range.
+ * Throughput and sampled latency percentiles are reported for every parameter value.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    /**
+     * Queues one log line of the given size.
+     */
+    @State(Scope.Thread)
+    public static class CreateLog {
+        @Param({"64", "1024"})
+        public long messageBytes;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("createLog", messageBytes);
+        }
+
+        @TearDown
+        public void tearDown() {
+            Fixtures.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long createLog(CreateLog state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Reads an energy log of the given number of lines.
+     */
+    @State(Scope.Thread)
+    public static class LoadEnergyLog {
+        @Param({"1000", "100000", "1000000"})
+        public long logLines;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("loadEnergyLog", logLines);
+        }
+
+        @TearDown
+        public void tearDown() {
+            Fixtures.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long loadEnergyLog(LoadEnergyLog state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Publishes a booking event to a bus with one consumer.
+     */
+    @State(Scope.Thread)
+    public static class PublishEvent {
+        @Param({"1024", "65536"})
+        public long capacity;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("publishEvent", capacity);
+        }
+
+        @TearDown
+        public void tearDown() {
+            Fixtures.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long publishEvent(PublishEvent state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Records latencies up to the given number of nanoseconds in a histogram.
+     */
+    @State(Scope.Thread)
+    public static class RecordLatency {
+        @Param({"1000", "1000000"})
+        public long maxNanos;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("recordLatency", maxNanos);
+        }
+
+        @TearDown
+        public void tearDown() {
+            Fixtures.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long recordLatency(RecordLatency state) {
+        return state.operation.getAsLong();
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PersistenceBenchmark class measures saving and loading the state of a station by the number of booked slots:
+ * the text state file and the startup image.
+ * Throughput and sampled latency percentiles are reported for every parameter value.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    /**
+     * Saves the state file of a station.
+     */
+    @State(Scope.Thread)
+    public static class SaveState {
+        @Param({"1", "17"})
+        public long bookedSlots;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("saveState", bookedSlots);
+        }
+    }
+
+    @Benchmark
+    public long saveState(SaveState state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Loads the state file of a station.
+     */
+    @State(Scope.Thread)
+    public static class LoadState {
+        @Param({"1", "17"})
+        public long bookedSlots;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("loadState", bookedSlots);
+        }
+    }
+
+    @Benchmark
+    public long loadState(LoadState state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Maps the startup image of a station and reads its bookings.
+     */
+    @State(Scope.Thread)
+    public static class LoadStartupImage {
+        @Param({"1", "17"})
+        public long bookedSlots;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("loadStartupImage", bookedSlots);
+        }
+    }
+
+    @Benchmark
+    public long loadStartupImage(LoadStartupImage state) {
+        return state.operation.getAsLong();
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QueueBenchmark class measures the charging queue by queue size: moving a user to the front, serving the head
+ * and queueing them again, and a whole cycle of filling, prioritizing every tenth user and draining.
+ * Throughput and sampled latency percentiles are reported for every parameter value.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    /**
+     * Moves a random queued user to the front.
+     */
+    @State(Scope.Thread)
+    public static class Prioritize {
+        @Param({"1000", "100000"})
+        public long queueSize;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("prioritize", queueSize);
+        }
+    }
+
+    @Benchmark
+    public long prioritize(Prioritize state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Serves the head of the queue and queues the same user again.
+     */
+    @State(Scope.Thread)
+    public static class PollOffer {
+        @Param({"1000", "100000"})
+        public long queueSize;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("pollOffer", queueSize);
+        }
+    }
+
+    @Benchmark
+    public long pollOffer(PollOffer state) {
+        return state.operation.getAsLong();
+    }
+
+    /**
+     * Fills a queue, prioritizes every tenth user and drains it.
+     */
+    @State(Scope.Thread)
+    public static class FillPrioritizeDrain {
+        @Param({"1000", "100000"})
+        public long queueSize;
+
+        LongSupplier operation;
+
+        @Setup
+        public void setUp() {
+            operation = Fixtures.prepare("fillPrioritizeDrain", queueSize);
+        }
+    }
+
+    @Benchmark
+    public long fillPrioritizeDrain(FillPrioritizeDrain state) {
+        return state.operation.getAsLong();
+    }
+}